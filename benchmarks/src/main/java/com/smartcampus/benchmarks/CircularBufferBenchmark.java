@@ -0,0 +1,44 @@
+package com.smartcampus.benchmarks;
+
+import com.smartcampus.utils.CircularBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 短期记忆缓冲区快照（每次构建上下文都会调用 asList）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CircularBufferBenchmark {
+
+    @Param({"5", "20"})
+    private int capacity;
+
+    private CircularBuffer<String> buffer;
+
+    @Setup
+    public void setup() {
+        buffer = new CircularBuffer<>(capacity);
+        // 写满并绕过一圈，覆盖 head 不在 0 的情况
+        for (int i = 0; i < capacity + capacity / 2; i++) {
+            buffer.add("turn-" + i);
+        }
+    }
+
+    @Benchmark
+    public List<String> asList() {
+        return buffer.asList();
+    }
+
+    @Benchmark
+    public List<String> addThenAsList() {
+        buffer.add("turn");
+        return buffer.asList();
+    }
+}
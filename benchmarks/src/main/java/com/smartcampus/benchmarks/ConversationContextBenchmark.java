@@ -0,0 +1,107 @@
+package com.smartcampus.benchmarks;
+
+import com.smartcampus.dto.ConversationTurn;
+import com.smartcampus.repository.AiConversationRepository;
+import com.smartcampus.repository.LearningFileRepository;
+import com.smartcampus.service.ConversationContextService;
+import com.smartcampus.service.ConversationMemoryStore;
+import com.smartcampus.service.SessionSummaryService;
+import com.smartcampus.service.TokenCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 对话上下文构建（每次流式提问前执行）：短期记忆读取、会话文件提示、token 计数与预算规划
+ *
+ * 仓库为内存替身，不含数据库往返；不带文件（不走向量检索），只测上下文拼装本身的 CPU 和分配。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversationContextBenchmark {
+
+    /**
+     * 短期记忆中的轮数
+     */
+    @Param({"5", "20"})
+    private int turns;
+
+    /**
+     * 每条回答的字符数
+     */
+    @Param({"200", "2000"})
+    private int answerChars;
+
+    private ConversationContextService service;
+
+    @Setup
+    public void setup() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        TokenCounter tokenCounter = new TokenCounter(meterRegistry);
+        Stubs.set(tokenCounter, "tokenizerPath", "");
+        Stubs.set(tokenCounter, "cacheMaxChars", 5_000_000L);
+        tokenCounter.init();
+
+        List<ConversationTurn> history = new ArrayList<>(turns);
+        for (int i = 0; i < turns; i++) {
+            history.add(new ConversationTurn("第" + i + "个问题：请解释一下动态规划中的状态转移方程",
+                    "动态规划".repeat(answerChars / 4), null));
+        }
+        ConversationMemoryStore memoryStore = new ConversationMemoryStore() {
+            @Override
+            public List<ConversationTurn> getRecentTurns(String sessionKey, Supplier<List<ConversationTurn>> loader) {
+                return history;
+            }
+
+            @Override
+            public void appendTurn(String sessionKey, ConversationTurn turn) {
+            }
+
+            @Override
+            public void clear(String sessionKey) {
+            }
+        };
+
+        AiConversationRepository conversationRepository = Stubs.repository(AiConversationRepository.class,
+                Map.of("countByUserIdAndSessionId", args -> (long) turns * 2));
+        List<Object[]> files = List.<Object[]>of(
+                new Object[]{1L, "高等数学笔记.pdf", "第一章极限与连续，第二章导数与微分的重点公式和例题。"},
+                new Object[]{2L, "数据结构期末复习.docx", "线性表、栈与队列、树与二叉树、图的遍历与最短路径。"});
+        LearningFileRepository learningFileRepository = Stubs.repository(LearningFileRepository.class,
+                Map.of("findSessionFileSummaries", args -> files));
+
+        SessionSummaryService sessionSummaryService = new SessionSummaryService(conversationRepository, null,
+                tokenCounter, Stubs.discardingExecutor(), meterRegistry);
+        Stubs.set(sessionSummaryService, "maxSessions", 10_000L);
+        Stubs.set(sessionSummaryService, "sessionIdleMinutes", 30L);
+        sessionSummaryService.initCache();
+
+        service = new ConversationContextService(conversationRepository, learningFileRepository,
+                null, null, null, memoryStore, tokenCounter, sessionSummaryService, meterRegistry);
+        Stubs.set(service, "maxHistoryTurns", turns);
+        Stubs.set(service, "systemBudget", 1000);
+        Stubs.set(service, "filesBudget", 1500);
+        Stubs.set(service, "historyBudget", 3000);
+        Stubs.set(service, "questionBudget", 1000);
+        Stubs.set(service, "summaryMaxTokens", 400);
+        Stubs.set(service, "fileChunkTopK", 3);
+        Stubs.set(service, "maxSessions", 10_000L);
+        Stubs.set(service, "sessionIdleMinutes", 30L);
+        service.initCaches();
+    }
+
+    @Benchmark
+    public List<Map<String, String>> buildFullContext() {
+        return service.buildFullContext(10001L, "sess_benchmark", "那么背包问题的状态转移方程应该怎么写？", null);
+    }
+}
@@ -0,0 +1,78 @@
+package com.smartcampus.benchmarks;
+
+import com.smartcampus.service.ReviewAdviceService;
+import com.smartcampus.service.impl.StudySuggestionServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词构建：复习建议与学习建议（私有方法，通过 MethodHandle 调用，static final 句柄可被 JIT 内联）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PromptBuilderBenchmark {
+
+    private static final MethodHandle REVIEW_PROMPT;
+    private static final MethodHandle SUGGESTION_PROMPT;
+
+    static {
+        try {
+            REVIEW_PROMPT = MethodHandles.privateLookupIn(ReviewAdviceService.class, MethodHandles.lookup())
+                    .findVirtual(ReviewAdviceService.class, "buildPrompt",
+                            MethodType.methodType(String.class, String.class, String.class, Integer.class));
+            SUGGESTION_PROMPT = MethodHandles.privateLookupIn(StudySuggestionServiceImpl.class, MethodHandles.lookup())
+                    .findVirtual(StudySuggestionServiceImpl.class, "buildPrompt",
+                            MethodType.methodType(String.class, Map.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ReviewAdviceService reviewAdviceService;
+    private StudySuggestionServiceImpl studySuggestionService;
+    private Map<String, Object> statistics;
+
+    @Setup
+    public void setup() {
+        // 只调用提示词构建，不需要仓库和 AI 服务
+        reviewAdviceService = new ReviewAdviceService(null, null);
+        studySuggestionService = new StudySuggestionServiceImpl(null, null, null);
+
+        statistics = new LinkedHashMap<>();
+        statistics.put("totalPlanCount", 12);
+        statistics.put("completedPlanCount", 7);
+        statistics.put("completionRate", 0.583);
+        statistics.put("overduePlanCount", 2);
+        statistics.put("unfinishedCount", 5);
+        statistics.put("difficultyDistribution", Map.of("details", List.of(
+                Map.of("type", "简单", "count", 4, "percentage", 0.333),
+                Map.of("type", "中等", "count", 6, "percentage", 0.5),
+                Map.of("type", "困难", "count", 2, "percentage", 0.167))));
+        statistics.put("planTypeDistribution", Map.of("details", List.of(
+                Map.of("type", "课程学习", "count", 8, "percentage", 0.667),
+                Map.of("type", "考试复习", "count", 4, "percentage", 0.333))));
+        statistics.put("subjectDistribution", Map.of("高等数学", 5, "数据结构", 4, "大学英语", 3));
+    }
+
+    @Benchmark
+    public String reviewAdvicePrompt() throws Throwable {
+        return (String) REVIEW_PROMPT.invokeExact(reviewAdviceService,
+                "二叉树遍历", "前序、中序、后序遍历的递归与非递归实现", Integer.valueOf(3));
+    }
+
+    @Benchmark
+    public String studySuggestionPrompt() throws Throwable {
+        return (String) SUGGESTION_PROMPT.invokeExact(studySuggestionService, statistics, "week");
+    }
+}
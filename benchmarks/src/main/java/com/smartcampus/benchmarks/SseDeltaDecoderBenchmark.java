@@ -0,0 +1,76 @@
+package com.smartcampus.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcampus.utils.SseDeltaDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式对话增量解析：SseDeltaDecoder（字节流 + JsonParser）对比原 extractTextFromChunk 的做法
+ * （整块转字符串、按行切分、readTree 后取 choices[0].delta.content）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SseDeltaDecoderBenchmark {
+
+    /**
+     * 每个数据块包含的增量帧数（上游可能一次推送多帧）
+     */
+    @Param({"1", "8"})
+    private int framesPerChunk;
+
+    /**
+     * 每帧文本增量的字符数
+     */
+    @Param({"4", "64"})
+    private int contentChars;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private final SseDeltaDecoder decoder = new SseDeltaDecoder();
+    private byte[] chunk;
+
+    @Setup
+    public void setup() {
+        String content = "学习".repeat(contentChars / 2);
+        String frame = "data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1700000000,"
+                + "\"model\":\"qwen-max\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"},"
+                + "\"finish_reason\":null}]}\n\n";
+        chunk = frame.repeat(framesPerChunk).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<SseDeltaDecoder.Delta> streamingDecoder() {
+        // 解码器在整行结束时复位，可跨调用复用（与一个流内连续数据块相同）
+        return decoder.decode(bufferFactory.wrap(chunk));
+    }
+
+    @Benchmark
+    public StringBuilder jsonTreeBaseline() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (String line : new String(chunk, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring(5).trim();
+            if (data.isEmpty() || "[DONE]".equals(data)) {
+                continue;
+            }
+            JsonNode node = objectMapper.readTree(data);
+            JsonNode content = node.path("choices").path(0).path("delta").path("content");
+            if (content.isTextual()) {
+                text.append(content.asText());
+            }
+        }
+        return text;
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 流式对话压测 - N 个并发 SSE 客户端请求 /api/ai/chat/send，统计首包延迟、输出速率和错误率
+ *
+ * 单文件程序，只依赖 JDK 21，直接运行：
+ *
+ *   java loadtest/SseLoadTest.java --token <JWT> [--url http://localhost:8080/api/ai/chat/send]
+ *        [--clients 20] [--requests 5] [--question 什么是二叉树] [--timeout-seconds 180]
+ *
+ * 配合 stub 配置（--spring.profiles.active=prod,stub）可在没有真实 API Key 的情况下压测整条链路。
+ * 每个客户端使用自己的会话，顺序发送 requests 个问题（同一会话新请求会取消旧流，因此不并发）。
+ * token 数优先取上游返回的 usage.completion_tokens，没有时按文本增量事件数计。
+ */
+public class SseLoadTest {
+
+    private static final Pattern CONTENT = Pattern.compile("\"content\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern COMPLETION_TOKENS = Pattern.compile("\"completion_tokens\"\\s*:\\s*(\\d+)");
+
+    /**
+     * 单次请求结果
+     */
+    record Result(boolean ok, String error, long firstTokenNanos, long totalNanos, int tokens) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String url = options.getOrDefault("url", "http://localhost:8080/api/ai/chat/send");
+        String token = options.get("token");
+        int clients = Integer.parseInt(options.getOrDefault("clients", "20"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "5"));
+        String question = options.getOrDefault("question", "请简要介绍一下二叉树的遍历方式");
+        Duration timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout-seconds", "180")));
+        if (token == null) {
+            System.err.println("缺少 --token <JWT>");
+            System.exit(2);
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        List<Result> results = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger done = new AtomicInteger();
+
+        System.out.printf("压测开始: %s, 并发 %d, 每客户端 %d 次%n", url, clients, requests);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                String sessionId = "load_" + UUID.randomUUID().toString().substring(0, 12);
+                executor.submit(() -> {
+                    for (int r = 0; r < requests; r++) {
+                        results.add(send(client, url, token, sessionId, question, timeout));
+                        int finished = done.incrementAndGet();
+                        if (finished % Math.max(1, clients) == 0) {
+                            System.out.printf("  已完成 %d/%d%n", finished, clients * requests);
+                        }
+                    }
+                });
+            }
+        }
+        report(results, System.nanoTime() - start);
+    }
+
+    private static Result send(HttpClient client, String url, String token, String sessionId,
+                               String question, Duration timeout) {
+        String boundary = "----load" + UUID.randomUUID();
+        Map<String, String> fields = Map.of("question", question, "sessionId", sessionId, "stream", "true");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Authorization", "Bearer " + token)
+                .header("Accept", "text/event-stream")
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(multipart(boundary, fields)))
+                .build();
+
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                return new Result(false, "HTTP " + response.statusCode(), 0, System.nanoTime() - start, 0);
+            }
+
+            long firstToken = 0;
+            int deltas = 0;
+            int usageTokens = -1;
+            String error = null;
+            String event = null;
+            try (Stream<String> lines = response.body()) {
+                for (String line : (Iterable<String>) lines::iterator) {
+                    if (line.startsWith("event:")) {
+                        event = line.substring(6).trim();
+                        continue;
+                    }
+                    if (!line.startsWith("data:")) {
+                        if (line.isEmpty()) {
+                            event = null;
+                        }
+                        continue;
+                    }
+                    String data = line.substring(5).trim();
+                    if ("error".equals(event) || data.contains("\"error\"")) {
+                        error = data.length() > 120 ? data.substring(0, 120) : data;
+                        continue;
+                    }
+                    Matcher content = CONTENT.matcher(data);
+                    if (content.find() && !content.group(1).isEmpty()) {
+                        deltas++;
+                        if (firstToken == 0) {
+                            firstToken = System.nanoTime() - start;
+                        }
+                    }
+                    Matcher usage = COMPLETION_TOKENS.matcher(data);
+                    if (usage.find()) {
+                        usageTokens = Integer.parseInt(usage.group(1));
+                    }
+                }
+            }
+            long total = System.nanoTime() - start;
+            int tokens = usageTokens >= 0 ? usageTokens : deltas;
+            if (error != null || firstToken == 0) {
+                return new Result(false, error != null ? error : "无输出", firstToken, total, tokens);
+            }
+            return new Result(true, null, firstToken, total, tokens);
+        } catch (IOException | InterruptedException e) {
+            return new Result(false, e.getClass().getSimpleName(), 0, System.nanoTime() - start, 0);
+        }
+    }
+
+    private static void report(List<Result> results, long elapsedNanos) {
+        List<Long> firstTokens = new ArrayList<>();
+        List<Long> totals = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        Map<String, Integer> errors = new ConcurrentHashMap<>();
+        long tokens = 0;
+
+        for (Result result : results) {
+            if (!result.ok()) {
+                errors.merge(result.error(), 1, Integer::sum);
+                continue;
+            }
+            firstTokens.add(result.firstTokenNanos());
+            totals.add(result.totalNanos());
+            tokens += result.tokens();
+            long streaming = result.totalNanos() - result.firstTokenNanos();
+            if (streaming > 0) {
+                rates.add(result.tokens() / (streaming / 1e9));
+            }
+        }
+
+        int total = results.size();
+        int failed = total - firstTokens.size();
+        System.out.println();
+        System.out.printf("请求数: %d, 成功: %d, 失败: %d, 错误率: %.2f%%%n",
+                total, firstTokens.size(), failed, total == 0 ? 0 : failed * 100.0 / total);
+        System.out.printf("总耗时: %.1f s, 吞吐: %.2f 请求/s, %.1f token/s%n",
+                elapsedNanos / 1e9, total / (elapsedNanos / 1e9), tokens / (elapsedNanos / 1e9));
+        printPercentiles("首包延迟", firstTokens);
+        printPercentiles("整体耗时", totals);
+        if (!rates.isEmpty()) {
+            Collections.sort(rates);
+            double mean = rates.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            System.out.printf("单流输出速率(token/s): 平均 %.1f, p50 %.1f, p10 %.1f%n",
+                    mean, rates.get(rates.size() / 2), rates.get(rates.size() / 10));
+        }
+        errors.forEach((error, count) -> System.out.printf("错误 x%d: %s%n", count, error));
+    }
+
+    private static void printPercentiles(String name, List<Long> nanos) {
+        if (nanos.isEmpty()) {
+            return;
+        }
+        Collections.sort(nanos);
+        System.out.printf("%s(ms): p50 %.0f, p90 %.0f, p99 %.0f, max %.0f%n", name,
+                percentile(nanos, 0.50), percentile(nanos, 0.90), percentile(nanos, 0.99),
+                nanos.get(nanos.size() - 1) / 1e6);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1e6;
+    }
+
+    private static byte[] multipart(String boundary, Map<String, String> fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            String part = "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + field.getKey() + "\"\r\n"
+                    + "Content-Type: text/plain; charset=UTF-8\r\n\r\n"
+                    + field.getValue() + "\r\n";
+            out.writeBytes(part.getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeBytes(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) {
+                options.put(args[i].substring(2), args[i + 1]);
+            }
+        }
+        return options;
+    }
+}
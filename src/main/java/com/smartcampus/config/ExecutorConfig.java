@@ -0,0 +1,44 @@
+package com.smartcampus.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台任务线程池配置
+ *
+ * 文件摘要、入库、解析以及阻塞等待 AI 响应的任务都提交到 aiTaskExecutor。
+ * 默认每个任务一个虚拟线程，阻塞等待不占用平台线程；
+ * 并发上限由 DownstreamLimiter 按下游分别控制，而不是由线程数决定。
+ * ai.executor.virtual-threads=false 时退回固定大小的平台线程池。
+ */
+@Slf4j
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${ai.executor.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService aiTaskExecutor() {
+        if (virtualThreads) {
+            log.info("AI任务执行器：虚拟线程模式");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ai-task-", 0).factory());
+        }
+
+        log.info("AI任务执行器：平台线程池模式");
+        return new ThreadPoolExecutor(
+                5, 20, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(100),
+                Thread.ofPlatform().name("ai-task-", 0).factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+}
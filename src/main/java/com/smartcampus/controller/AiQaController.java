@@ -1,6 +1,7 @@
 package com.smartcampus.controller;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smartcampus.dto.GenerateReviewAdviceRequest;
 import com.smartcampus.entity.AiConversation;
@@ -11,27 +12,32 @@ import com.smartcampus.repository.LearningFileRepository;
 import com.smartcampus.repository.UserRepository;
 import com.smartcampus.service.*;
 import com.smartcampus.utils.JwtUtil;
-import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
+import com.smartcampus.utils.SseDeltaDecoder;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RestController
 @RequestMapping("/api/ai")
@@ -55,6 +61,9 @@ public class AiQaController {
     @Autowired
     private FileProcessingService fileProcessingService;
 
+    @Autowired
+    private FileStorageService fileStorageService;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -70,9 +79,31 @@ public class AiQaController {
     @Autowired
     private FileSummaryService fileSummaryService;
 
+    @Autowired
+    private FileIngestionService fileIngestionService;
+
+    @Autowired
+    private ActiveStreamRegistry activeStreamRegistry;
+
+    @Autowired
+    private DownstreamLimiter downstreamLimiter;
+
+    @Autowired
+    private DashScopeGuard dashScopeGuard;
+
+    @Autowired
+    private TokenCounter tokenCounter;
+
+    // 后台任务执行器（默认虚拟线程），见 ExecutorConfig
+    @Autowired
+    @Qualifier("aiTaskExecutor")
     private ExecutorService executorService;
     private final Map<String, String> taskStatus = new ConcurrentHashMap<>();
 
+    private static final Duration STREAM_IDLE_TIMEOUT = Duration.ofSeconds(120);
+    private static final int DEFAULT_SESSION_PAGE_SIZE = 20;
+    private static final int MAX_SESSION_PAGE_SIZE = 100;
+
     public AiQaController(QianWenService qianWenService, JwtUtil jwtUtil, StudyPlanDetailService studyPlanDetailService, ReviewSuggestionService reviewSuggestionService) {
         this.qianWenService = qianWenService;
         this.jwtUtil = jwtUtil;
@@ -80,36 +111,15 @@ public class AiQaController {
         this.reviewSuggestionService = reviewSuggestionService;
     }
 
-    @PostConstruct
-    public void init() {
-        executorService = new ThreadPoolExecutor(
-                5, 20, 60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(100),
-                new ThreadPoolExecutor.CallerRunsPolicy()
-        );
-    }
-
-    @PreDestroy
-    public void destroy() {
-        if (executorService != null) {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
-    }
     /**
-     * 统一智能问答接口 - 支持流式/非流式，支持文件上传
+     * 统一智能问答接口 - 流式，支持文件上传
+     * 鉴权、参数错误在开始推流前以真实 HTTP 状态码返回（JSON，见 handleBusinessException）；
+     * 推流开始后的错误以 error 事件返回
      */
     @PostMapping(value = "/chat/send",
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
             produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_JSON_VALUE})
-    public Object chatWithAi(
+    public ResponseEntity<Flux<ServerSentEvent<String>>> chatWithAi(
             @RequestParam("question") String question,
             @RequestParam(value = "file", required = false) MultipartFile file,
             @RequestParam(value = "sessionId", required = false) String sessionIdParam,
@@ -122,101 +132,45 @@ public class AiQaController {
         log.info("🔑 sessionId: {}", sessionIdParam);
         log.info("🌊 stream参数: {}", streamParam);
 
-        try {
-            Long userId = validateAndExtractUserId(authHeader);
-            if (userId == null) {
-                return ResponseEntity.status(401)
-                        .body(Map.of("code", 401, "message", "未授权或Token无效"));
-            }
+        Long userId = validateAndExtractUserId(authHeader);
+        if (userId == null) {
+            throw new BusinessException(401, "未授权或Token无效");
+        }
 
-            String sessionId = (sessionIdParam != null && !sessionIdParam.isEmpty())
-                    ? sessionIdParam
-                    : generateSessionId();
+        if (!"true".equalsIgnoreCase(streamParam)) {
+            // 非流式模式 - 不支持
+            log.warn("非流式模式已废弃，拒绝请求，streamParam={}", streamParam);
+            throw new BusinessException(400, "非流式模式已不再支持，请使用流式模式（stream=true 或不传此参数）");
+        }
 
-            boolean stream = "true".equalsIgnoreCase(streamParam);
+        String sessionId = (sessionIdParam != null && !sessionIdParam.isEmpty())
+                ? sessionIdParam
+                : generateSessionId();
 
-            if (stream) {
-                // 流式模式 - 支持文件上传
-                return handleStreamingChat(question, file, sessionId, userId);
-            } else {
-                // 非流式模式 - 不支持
-                log.warn("非流式模式已废弃，拒绝请求，streamParam={}", streamParam);
-                return ResponseEntity.badRequest()
-                        .body(Map.of(
-                                "code", 400,
-                                "message", "非流式模式已不再支持，请使用流式模式（stream=true 或不传此参数）"
-                        ));
-            }
-
-        } catch (Exception e) {
-            log.error("AI接口异常", e);
-            return ResponseEntity.status(500)
-                    .body(Map.of("code", 500, "message", "服务器内部错误"));
-        }
+        // 流式模式 - 支持文件上传
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(handleStreamingChat(question, file, sessionId, userId));
     }
 
-
     /**
      * 处理流式聊天（支持文件上传）
+     * 返回响应式事件流：上游每产出一个分块才写出一个事件，不占用工作线程；
+     * 客户端断开或异步请求超时时取消订阅，上游请求随之取消；
+     * 同一会话发起新提问时，旧的流被取代并取消
      */
-    private SseEmitter handleStreamingChat(String question, MultipartFile file,
-                                           String sessionId, Long userId) {
-
-        SseEmitter emitter = new SseEmitter(120000L);
-
-        // 设置超时回调
-        emitter.onTimeout(() -> {
-            log.warn("SSE连接超时，会话ID: {}", sessionId);
-            try {
-                Map<String, Object> timeoutEvent = Map.of(
-                        "type", "timeout",
-                        "message", "处理超时，文件可能过大或系统繁忙",
-                        "code", 408
-                );
-                emitter.send(SseEmitter.event()
-                        .name("error")
-                        .data(timeoutEvent)
-                );
-            } catch (IOException e) {
-                log.error("发送超时消息失败", e);
-            } finally {
-                emitter.complete();
-            }
-        });
-
-        // 设置错误回调
-        emitter.onError((ex) -> {
-            log.error("SSE连接错误，会话ID: {}", sessionId, ex);
-            try {
-                Map<String, Object> errorMsg = Map.of(
-                        "error", "处理失败",
-                        "message", ex.getMessage()
-                );
-                emitter.send(errorMsg);
-            } catch (IOException e) {
-                log.error("发送错误消息失败", e);
-            }
-            emitter.complete();
-        });
+    private Flux<ServerSentEvent<String>> handleStreamingChat(String question, MultipartFile file,
+                                                              String sessionId, Long userId) {
 
-        // ===== 1. 保存文件（主线程） =====
-        String savedFilePath = null;
+        // ===== 1. 保存文件（请求线程） =====
         Long fileId = null;
-        String fileContent = null;  // 新增：缓存文件内容
 
         if (file != null && !file.isEmpty()) {
             try {
                 // 保存文件到持久化目录
                 LearningFile learningFile = saveLearningFile(file, userId.toString());
                 fileId = learningFile.getId();
-                savedFilePath = learningFile.getFilePath();
-                log.info("文件已保存到: {}, fileId: {}", savedFilePath, fileId);
-
-                // ✅ 立即提取文件内容，避免重复读取
-                fileContent = fileProcessingService.extractTextFromFileByPath(savedFilePath);
-                if (fileContent.length() > 2000) {
-                    fileContent = fileContent.substring(0, 2000) + "...\n[文件内容过长，已截断]";
-                }
+                log.info("文件已保存到: {}, fileId: {}", learningFile.getFilePath(), fileId);
 
                 // ✅ 异步生成文件摘要（不阻塞对话）
                 final Long finalFileIdForSummary = fileId;
@@ -228,152 +182,163 @@ public class AiQaController {
                     }
                 });
 
+                // ✅ 异步分块向量化入库，后续提问按相关片段检索（文件内容由上下文服务按需注入）
+                executorService.submit(() -> {
+                    try {
+                        fileIngestionService.ingest(learningFile);
+                    } catch (Exception e) {
+                        log.error("文件入库失败, fileId: {}", learningFile.getId(), e);
+                    }
+                });
+
             } catch (Exception e) {
                 log.error("保存文件失败", e);
-                try {
-                    Map<String, Object> errorMsg = Map.of(
-                            "error", "文件保存失败",
-                            "message", e.getMessage()
-                    );
-                    emitter.send(errorMsg);
-                } catch (IOException ex) {
-                    log.error("发送错误消息失败", ex);
-                }
-                emitter.complete();
-                return emitter;
+                return Flux.just(errorEvent("file_save_failed", "文件保存失败: " + e.getMessage(), 500));
             }
         }
 
-        final String finalFileContent = fileContent;  // 缓存的文件内容
         final boolean isFirstMessage = aiConversationRepository.countByUserIdAndSessionId(userId, sessionId) == 0;
 
-        // ===== 2. 异步处理 AI 请求 =====
+        // ===== 2. 构建上下文（数据库、向量检索为阻塞调用，放到弹性线程池）后转发上游分块 =====
         final Long currentFileId = fileId;
         final String finalQuestion = question;
+        StringBuilder fullAnswerText = new StringBuilder();
+        AtomicReference<SseDeltaDecoder.Usage> usage = new AtomicReference<>();
 
-        executorService.submit(() -> {
+        Mono<ServerSentEvent<String>> saveConversation = Mono.<ServerSentEvent<String>>fromRunnable(() -> {
+            log.info("========== 流式完成 ==========");
             try {
-                String enhancedQuestion = question;
-                if (finalFileContent != null && !finalFileContent.isEmpty()) {
-                    enhancedQuestion = question + "\n\n参考文件内容：\n" + finalFileContent;
-                }
-
-                // ✅ 在 Controller 层构建完整的上下文消息列表
-                List<Map<String, String>> messages = conversationContextService.buildFullContext(
-                        userId, sessionId, enhancedQuestion, currentFileId
+                // 先更新短期记忆再落库：若反过来，两步之间发生的记忆重载会从数据库读到本轮，追加后重复
+                conversationContextService.updateShortTermMemory(
+                        userId, sessionId, finalQuestion,
+                        fullAnswerText.toString(), currentFileId
                 );
 
-                StringBuilder fullAnswerText = new StringBuilder();
-
-                // ✅ 直接传递构建好的消息列表
-                qianWenService.askQuestionWithContext(messages, "qwen-max")
-                        .doOnNext(chunk -> {
-                            try {
-                                String textChunk = extractTextFromChunk(chunk);
-                                if (textChunk != null && !textChunk.isEmpty()) {
-                                    fullAnswerText.append(textChunk);
-                                }
-                                emitter.send(chunk);
-                            } catch (IOException e) {
-                                log.error("发送SSE数据失败", e);
-                                throw new RuntimeException(e);
-                            }
-                        })
-                        .doOnComplete(() -> {
-                            log.info("========== 流式完成 ==========");
-                            try {
-                                saveConversationToDb(userId, sessionId, finalQuestion,
-                                        fullAnswerText.toString(), currentFileId, isFirstMessage);
-
-                                conversationContextService.updateShortTermMemory(
-                                        sessionId, finalQuestion,
-                                        fullAnswerText.toString(), currentFileId
-                                );
-
-                                emitter.complete();
-                            } catch (Exception e) {
-                                log.error("保存对话记录失败", e);
-                                emitter.complete();
-                            }
-                        })
-                        .doOnError(error -> {
-                            log.error("流式处理错误: {}", error.getMessage());
-                            try {
-                                Map<String, Object> errorResponse = Map.of(
-                                        "error", "AI处理失败",
-                                        "message", error.getMessage()
-                                );
-                                emitter.send(errorResponse);
-                            } catch (IOException e) {
-                                log.error("发送错误消息失败", e);
-                            }
-                            emitter.complete();
-                        })
-                        .subscribe();
+                saveConversationToDb(userId, sessionId, finalQuestion,
+                        fullAnswerText.toString(), currentFileId, isFirstMessage, usage.get());
 
-            } catch (Exception e) {
-                log.error("处理流式聊天失败", e);
-                try {
-                    Map<String, Object> errorResponse = Map.of(
-                            "error", "处理失败",
-                            "message", e.getMessage()
-                    );
-                    emitter.send(errorResponse);
-                } catch (IOException ex) {
-                    log.error("发送错误消息失败", ex);
+                // 文件提示片段按数据库中的关联文件重建，必须在本轮落库之后失效
+                if (currentFileId != null) {
+                    conversationContextService.invalidateSessionFiles(userId, sessionId);
                 }
-                emitter.complete();
+            } catch (Exception e) {
+                log.error("保存对话记录失败", e);
             }
+        }).subscribeOn(Schedulers.boundedElastic());
+
+        return Flux.defer(() -> {
+            // 同一会话只保留最新的流，旧流收到信号后停止转发并取消上游
+            ActiveStreamRegistry.Registration registration = activeStreamRegistry.register(userId, sessionId);
+
+            return Mono.fromCallable(() -> conversationContextService.buildFullContext(
+                            userId, sessionId, question, currentFileId))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMapMany(messages -> qianWenService.streamChat(messages, ModelRouter.Task.CHAT))
+                    .doOnNext(delta -> {
+                        if (delta.hasContent()) {
+                            fullAnswerText.append(delta.content());
+                        }
+                        if (delta.usage() != null) {
+                            usage.set(delta.usage());
+                        }
+                    })
+                    .map(this::deltaEvent)
+                    .takeUntilOther(registration.supersededSignal())
+                    // 被取代的回答不完整，不写入历史和短期记忆
+                    .concatWith(Mono.defer(() -> registration.isSuperseded()
+                            ? Mono.just(errorEvent("superseded", "该会话已发起新的提问，本次回答已取消", 409))
+                            : saveConversation))
+                    // 开始输出后长时间无新事件视为超时；构建上下文和等待首个分块不计入
+                    // （首个分块的等待上限由 QianWenService 控制）
+                    .timeout(Mono.never(), event -> Mono.delay(STREAM_IDLE_TIMEOUT))
+                    .onErrorResume(TimeoutException.class, e -> {
+                        log.warn("SSE连接超时，会话ID: {}", sessionId);
+                        return Mono.just(errorEvent("timeout", "处理超时，文件可能过大或系统繁忙", 408));
+                    })
+                    // 并发上限、熔断或下游许可拒绝：请求未被处理，客户端可稍后重试
+                    .onErrorResume(AiQaController::isBusy, e -> {
+                        log.warn("AI服务繁忙，拒绝请求，会话ID: {}, 原因: {}", sessionId, e.getMessage());
+                        return Mono.just(busyEvent(e.getMessage()));
+                    })
+                    .onErrorResume(error -> {
+                        log.error("流式处理错误: {}", error.getMessage());
+                        return Mono.just(errorEvent("ai_failed", "AI处理失败: " + error.getMessage(), 500));
+                    })
+                    .doOnCancel(() -> log.info("客户端断开，取消上游请求，会话ID: {}", sessionId))
+                    .doFinally(signal -> registration.release());
         });
-
-        return emitter;
     }
 
+    /**
+     * 构造 error 事件：{type, message, code}
+     */
+    private ServerSentEvent<String> errorEvent(String type, String message, int code) {
+        return jsonEvent("error", Map.of("type", type, "message", message, "code", code));
+    }
 
     /**
-     * 从chunk中提取纯文本内容
+     * 是否为繁忙拒绝（503 业务异常）
      */
-    private String extractTextFromChunk(String chunk) {
-        log.info("========== extractTextFromChunk 开始 ==========");
-        log.info("原始 chunk: '{}'", chunk);
+    private static boolean isBusy(Throwable error) {
+        return error instanceof BusinessException e && Integer.valueOf(503).equals(e.getCode());
+    }
 
-        if (chunk == null || chunk.isEmpty()) {
-            return "";
-        }
+    /**
+     * 构造可重试的繁忙 error 事件：{type: busy, message, code: 503, retryable: true}
+     */
+    private ServerSentEvent<String> busyEvent(String message) {
+        return jsonEvent("error", Map.of("type", "busy", "message", message, "code", 503, "retryable", true));
+    }
 
-        // 情况1：如果是结束标记 [DONE]
-        if (chunk.equals("[DONE]")) {
-            return "";
-        }
-        // 情况2：尝试解析 JSON
+    /**
+     * 构造 JSON 数据的 SSE 事件
+     */
+    private ServerSentEvent<String> jsonEvent(String eventName, Map<String, Object> data) {
+        String json;
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(chunk);
-
-            JsonNode choices = root.path("choices");
+            json = objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            json = String.valueOf(data.get("message"));
+        }
+        return ServerSentEvent.<String>builder(json).event(eventName).build();
+    }
 
-            if (choices.isArray() && !choices.isEmpty()) {
 
-                JsonNode delta = choices.get(0).path("delta");
+    /**
+     * 增量事件转为前端使用的 SSE 数据（与上游兼容的 choices[0].delta 格式）
+     */
+    private ServerSentEvent<String> deltaEvent(SseDeltaDecoder.Delta delta) {
+        if (delta.done()) {
+            return ServerSentEvent.builder("[DONE]").build();
+        }
 
-                if (delta.has("content")) {
-                    return delta.path("content").asText();
-                } else {
-                    log.info("delta 节点没有 content 字段");
-                }
-            } else {
-                log.info("choices 为空或不是数组");
+        StringWriter writer = new StringWriter(64 + (delta.hasContent() ? delta.content().length() : 0));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("choices");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("delta");
+            if (delta.content() != null) {
+                generator.writeStringField("content", delta.content());
             }
-        } catch (Exception e) {
-            log.error("JSON 解析失败", e);
+            generator.writeEndObject();
+            generator.writeStringField("finish_reason", delta.finishReason());
+            generator.writeEndObject();
+            generator.writeEndArray();
+            if (delta.usage() != null) {
+                generator.writeObjectFieldStart("usage");
+                generator.writeNumberField("prompt_tokens", delta.usage().promptTokens());
+                generator.writeNumberField("completion_tokens", delta.usage().completionTokens());
+                generator.writeNumberField("total_tokens", delta.usage().totalTokens());
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-
-        log.info("没有提取到内容，返回空字符串");
-        return "";
+        return ServerSentEvent.builder(writer.toString()).build();
     }
 
-
-
     /**
      * 验证并提取用户ID
      */
@@ -484,11 +449,10 @@ public class AiQaController {
         }
 
         Map<String, Object> status = new HashMap<>();
-        if (executorService instanceof ThreadPoolExecutor pool) {
-            status.put("activeThreads", pool.getActiveCount());
-            status.put("queueSize", pool.getQueue().size());
-            status.put("completedTasks", pool.getCompletedTaskCount());
-        }
+        // 任务跑在虚拟线程上，没有线程池指标；并发由下游许可和对话接口自适应上限限制
+        status.put("downstream", downstreamLimiter.snapshot());
+        status.put("upstream", dashScopeGuard.snapshot());
+        status.put("activeStreams", activeStreamRegistry.activeCount());
         status.put("taskStatusCount", taskStatus.size());
         status.put("timestamp", new Date());
 
@@ -503,10 +467,14 @@ public class AiQaController {
 
     /**
      * 获取用户的会话列表（每个会话只返回一条记录）
+     * 传入 size 或 cursor 时按创建时间倒序分页，响应中的 nextCursor 用于获取下一页；
+     * 都不传时返回全部会话
      */
     @GetMapping("/chat/sessions")
     public ResponseEntity<?> getConversationSessions(
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
 
         log.info("🔥 getConversationSessions 开始执行");
 
@@ -518,8 +486,27 @@ public class AiQaController {
                     .body(Map.of("code", 401, "message", "未授权或Token无效"));
         }
 
+        boolean paged = cursor != null || size != null;
+        int pageSize = size != null ? Math.max(1, Math.min(size, MAX_SESSION_PAGE_SIZE)) : DEFAULT_SESSION_PAGE_SIZE;
+        SessionCursor after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            after = SessionCursor.decode(cursor);
+            if (after == null) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("code", 400, "message", "无效的分页游标"));
+            }
+        }
+
         try {
-            List<Object[]> results = aiConversationRepository.findSessionSummaries(userId);
+            List<Object[]> results;
+            if (!paged) {
+                results = aiConversationRepository.findSessionSummaries(userId);
+            } else if (after == null) {
+                results = aiConversationRepository.findSessionSummariesFirstPage(userId, pageSize);
+            } else {
+                results = aiConversationRepository.findSessionSummariesAfter(
+                        userId, after.createTime(), after.sessionId(), pageSize);
+            }
 
             // 打印第一条数据看看
             if (!results.isEmpty()) {
@@ -528,6 +515,15 @@ public class AiQaController {
                         first[0], first[1], first[2], first[3], first[4], first[5]);
             }
 
+            // 一次批量查询会话关联的文件，避免逐行查询
+            Set<Long> fileIds = new HashSet<>();
+            for (Object[] row : results) {
+                if (row[5] != null) {
+                    fileIds.add(((Number) row[5]).longValue());
+                }
+            }
+            Map<Long, LearningFile> files = loadFilesById(fileIds);
+
             List<Map<String, Object>> sessions = new ArrayList<>();
 
             for (Object[] row : results) {
@@ -539,18 +535,14 @@ public class AiQaController {
                     session.put("createTime", row[3]);
                     session.put("messageCount", ((Number) row[4]).intValue());
 
-                    // 如果有文件关联，查询文件信息
+                    // 如果有文件关联，附加文件信息
                     if (row[5] != null) {
-                        try {
-                            Long fileId = ((Number) row[5]).longValue();
-                            Optional<LearningFile> fileOpt = learningFileRepository.findById(fileId);
-                            fileOpt.ifPresent(file -> {
-                                session.put("fileId", fileId);
-                                session.put("fileName", file.getOriginalName());
-                                session.put("fileType", file.getFileType());
-                            });
-                        } catch (Exception e) {
-                            log.error("查询文件信息失败, fileId={}", row[5], e);
+                        Long fileId = ((Number) row[5]).longValue();
+                        LearningFile file = files.get(fileId);
+                        if (file != null) {
+                            session.put("fileId", fileId);
+                            session.put("fileName", file.getOriginalName());
+                            session.put("fileType", file.getFileType());
                         }
                     }
 
@@ -564,6 +556,15 @@ public class AiQaController {
             response.put("code", 200);
             response.put("message", "success");
             response.put("data", sessions);
+            if (paged) {
+                // 满页时才可能还有下一页
+                String nextCursor = null;
+                if (results.size() == pageSize) {
+                    Object[] last = results.getLast();
+                    nextCursor = new SessionCursor(toLocalDateTime(last[3]), (String) last[0]).encode();
+                }
+                response.put("nextCursor", nextCursor);
+            }
 
             HttpHeaders headers = new HttpHeaders();
             headers.set("Connection", "close");
@@ -607,6 +608,15 @@ public class AiQaController {
                 ));
             }
 
+            // 一次批量查询会话关联的文件，避免逐条查询
+            Set<Long> fileIds = new HashSet<>();
+            for (AiConversation conv : conversations) {
+                if (conv.getFileId() != null) {
+                    fileIds.add(conv.getFileId());
+                }
+            }
+            Map<Long, LearningFile> files = loadFilesById(fileIds);
+
             // 转换为前端需要的格式，包含文件信息
             List<Map<String, Object>> history = new ArrayList<>();
             for (AiConversation conv : conversations) {
@@ -623,19 +633,16 @@ public class AiQaController {
                 item.put("createdAt", conv.getCreatedAt().toString());
                 item.put("rating", conv.getRating());
 
-                if (conv.getFileId() != null) {
-                    Optional<LearningFile> fileOpt = learningFileRepository.findById(conv.getFileId());
-                    if (fileOpt.isPresent()) {
-                        LearningFile file = fileOpt.get();
-                        Map<String, Object> fileInfo = new HashMap<>();
-                        fileInfo.put("id", file.getId());
-                        fileInfo.put("fileName", file.getFileName());
-                        fileInfo.put("originalName", file.getOriginalName());
-                        fileInfo.put("fileType", file.getFileType());
-                        fileInfo.put("fileSize", file.getFileSize());
-                        fileInfo.put("uploadTime", file.getUploadTime());
-                        item.put("file", fileInfo);
-                    }
+                LearningFile file = conv.getFileId() != null ? files.get(conv.getFileId()) : null;
+                if (file != null) {
+                    Map<String, Object> fileInfo = new HashMap<>();
+                    fileInfo.put("id", file.getId());
+                    fileInfo.put("fileName", file.getFileName());
+                    fileInfo.put("originalName", file.getOriginalName());
+                    fileInfo.put("fileType", file.getFileType());
+                    fileInfo.put("fileSize", file.getFileSize());
+                    fileInfo.put("uploadTime", file.getUploadTime());
+                    item.put("file", fileInfo);
                 }
 
                 history.add(item);
@@ -670,6 +677,7 @@ public class AiQaController {
 
         try {
             int deletedCount = aiConversationRepository.deleteBySessionIdAndUserId(sessionId, userId);
+            conversationContextService.clearShortTermMemory(userId, sessionId);
 
             if (deletedCount == 0) {
                 return ResponseEntity.status(404)
@@ -883,9 +891,9 @@ public class AiQaController {
             // 2. 检查AI服务
             try {
                 // 尝试简单调用AI服务
-                String testResponse = qianWenService.askQuestion("测试",
-                                Collections.emptyList(), "qwen-max")
-                        .block(Duration.ofSeconds(90));
+                // 诊断需要真实调用，绕过响应缓存
+                String testResponse = qianWenService.askQuestionBlocking("测试",
+                        Collections.emptyList(), "qwen-max", Duration.ofSeconds(90), false);
                 status.put("aiService", "正常");
                 status.put("aiResponseLength", testResponse != null ? testResponse.length() : 0);
             } catch (Exception e) {
@@ -903,14 +911,10 @@ public class AiQaController {
                 status.put("database", "异常: " + e.getMessage());
             }
 
-            // 4. 检查线程池
-            if (executorService instanceof ThreadPoolExecutor pool) {
-                status.put("threadPool", Map.of(
-                        "activeThreads", pool.getActiveCount(),
-                        "queueSize", pool.getQueue().size(),
-                        "poolSize", pool.getPoolSize()
-                ));
-            }
+            // 4. 检查下游并发（虚拟线程没有线程池可查，看各下游的许可占用和排队、对话接口上限与熔断状态）
+            status.put("downstream", downstreamLimiter.snapshot());
+            status.put("upstream", dashScopeGuard.snapshot());
+            status.put("activeStreams", activeStreamRegistry.activeCount());
 
             status.put("code", 200);
             status.put("message", "诊断完成");
@@ -957,54 +961,32 @@ public class AiQaController {
     }
 
     /**
-     * 辅助方法：保存学习文件（确保文件完全写入）
+     * 辅助方法：保存学习文件（按内容去重存储，相同内容的文件共用一份磁盘文件和提取结果）
      */
     private LearningFile saveLearningFile(MultipartFile file, String userId) throws Exception {
+        FileStorageService.StoredFile stored = fileStorageService.store(file);
+
         LearningFile learningFile = new LearningFile();
         learningFile.setUserId(Long.parseLong(userId));
         learningFile.setOriginalName(file.getOriginalFilename());
-        learningFile.setFileName(UUID.randomUUID() + "_" + file.getOriginalFilename());
+        learningFile.setFileName(stored.path().getFileName().toString());
         learningFile.setFileType(getFileExtension(file.getOriginalFilename()));
-        learningFile.setFileSize(file.getSize());
+        learningFile.setFileSize(stored.size());
         learningFile.setUploadTime(LocalDateTime.now());
         learningFile.setStatus("active");
+        learningFile.setFilePath(stored.path().toString());
 
-        // 保存文件到服务器
-        String filePath = "/opt/smart-campus/uploads/" + learningFile.getFileName();
-        File targetFile = new File(filePath);
-
-        try (InputStream inputStream = file.getInputStream();
-             FileOutputStream outputStream = new FileOutputStream(targetFile)) {
-
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-            outputStream.flush(); // 强制刷新到磁盘
-        }
-
-        int maxRetries = 5;
-        int retryCount = 0;
-        long expectedSize = file.getSize();
-
-        while (retryCount < maxRetries) {
-            if (targetFile.exists() && targetFile.length() == expectedSize) {
-                log.info("文件写入完成，大小: {} bytes, 重试次数: {}", targetFile.length(), retryCount);
-                break;
-            }
-            retryCount++;
-            log.debug("等待文件写入完成，当前大小: {}, 预期大小: {}, 重试: {}/{}",
-                    targetFile.exists() ? targetFile.length() : 0, expectedSize, retryCount, maxRetries);
-            Thread.sleep(100);
-        }
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(ExtractedTextCache.CONTENT_HASH_KEY, stored.sha256());
+        learningFile.setMetadata(metadata);
 
-        if (targetFile.length() != expectedSize) {
-            log.warn("文件可能未完全写入，当前大小: {}, 预期大小: {}", targetFile.length(), expectedSize);
+        try {
+            return learningFileRepository.save(learningFile);
+        } catch (RuntimeException e) {
+            // 记录未写入：本次新存的文件立即删除
+            fileStorageService.discard(stored);
+            throw e;
         }
-
-        learningFile.setFilePath(filePath);
-        return learningFileRepository.save(learningFile);
     }
 
     /**
@@ -1019,7 +1001,7 @@ public class AiQaController {
             try {
                 Long userIdLong = Long.parseLong(userId);
                 boolean isFirstMessage = aiConversationRepository.countByUserIdAndSessionId(userIdLong, sessionId) == 0;
-                saveConversationToDb(userIdLong, sessionId, question, answer, fileId, isFirstMessage);
+                saveConversationToDb(userIdLong, sessionId, question, answer, fileId, isFirstMessage, null);
                 log.info("对话记录保存成功，长度: {}", answer.length());
                 return;
             } catch (Exception e) {
@@ -1035,7 +1017,7 @@ public class AiQaController {
                         String shortAnswer = answer.length() > 5000 ?
                                 answer.substring(0, 5000) + "..." : answer;
                         boolean isFirstMessage = aiConversationRepository.countByUserIdAndSessionId(userIdLong, sessionId) == 0;
-                        saveConversationToDb(userIdLong, sessionId, question, shortAnswer, fileId, isFirstMessage);
+                        saveConversationToDb(userIdLong, sessionId, question, shortAnswer, fileId, isFirstMessage, null);
                         log.info("已保存简化版对话记录");
                     } catch (Exception ex) {
                         log.error("连简化版也保存失败", ex);
@@ -1056,7 +1038,8 @@ public class AiQaController {
      * 保存对话记录到数据库 - 改进版，支持判断是否第一条消息
      */
     private void saveConversationToDb(Long userId, String sessionId,
-                                      String question, String answer, Long fileId, boolean isFirstMessage) {
+                                      String question, String answer, Long fileId, boolean isFirstMessage,
+                                      SseDeltaDecoder.Usage usage) {
         AiConversation conversation = new AiConversation();
         conversation.setUserId(userId);
         conversation.setSessionId(sessionId);
@@ -1076,9 +1059,11 @@ public class AiQaController {
         }
         // 如果不是第一条，title保持null
 
-        // 估算token使用量（简单估算：中文字符数 * 1.5 + 英文字符数 * 1.3）
-        int estimatedTokens = (int)(question.length() * 1.5 + answer.length() * 1.3);
-        conversation.setTokenUsage(estimatedTokens);
+        // token 用量：优先使用接口返回的实际用量（含上下文）；没有时用本地分词器计数问答本身
+        int tokenUsage = usage != null
+                ? usage.totalTokens()
+                : tokenCounter.count(question) + tokenCounter.count(answer);
+        conversation.setTokenUsage(tokenUsage);
 
         aiConversationRepository.save(conversation);
     }
@@ -1098,6 +1083,63 @@ public class AiQaController {
         learningFileRepository.updateSummary(fileId, summary);
     }
 
+    /**
+     * 会话列表分页游标：上一页最后一个会话的 (创建时间, 会话ID)，Base64URL 编码
+     */
+    private record SessionCursor(LocalDateTime createTime, String sessionId) {
+
+        String encode() {
+            String raw = createTime + "|" + sessionId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static SessionCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                if (sep <= 0 || sep == raw.length() - 1) {
+                    return null;
+                }
+                return new SessionCursor(LocalDateTime.parse(raw.substring(0, sep)), raw.substring(sep + 1));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 原生查询的时间列可能是 Timestamp 或 LocalDateTime，统一转换
+     */
+    private LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime localDateTime) {
+            return localDateTime;
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        if (value instanceof java.time.OffsetDateTime offsetDateTime) {
+            return offsetDateTime.toLocalDateTime();
+        }
+        if (value instanceof java.time.Instant instant) {
+            return LocalDateTime.ofInstant(instant, java.time.ZoneId.systemDefault());
+        }
+        throw new IllegalArgumentException("无法解析时间: " + value);
+    }
+
+    /**
+     * 批量查询文件，返回 文件ID -> 文件
+     */
+    private Map<Long, LearningFile> loadFilesById(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, LearningFile> files = new HashMap<>();
+        for (LearningFile file : learningFileRepository.findAllById(fileIds)) {
+            files.put(file.getId(), file);
+        }
+        return files;
+    }
+
     private String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) return "";
         return filename.substring(filename.lastIndexOf(".") + 1);
@@ -1123,6 +1165,18 @@ public class AiQaController {
         return ResponseEntity.status(status).body(error);
     }
 
+    /**
+     * 业务异常按业务 code 返回 HTTP 状态码；显式声明 JSON，推流接口（Accept: text/event-stream）的请求也能写出
+     */
+    @ExceptionHandler(BusinessException.class)
+    public ResponseEntity<?> handleBusinessException(BusinessException e) {
+        log.warn("业务异常: code={}, message={}", e.getCode(), e.getMessage());
+        HttpStatus status = HttpStatus.resolve(e.getCode());
+        return ResponseEntity.status(status != null ? status : HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("code", e.getCode(), "message", e.getMessage()));
+    }
+
     /**
      * 统一异常处理
      */
@@ -1137,6 +1191,7 @@ public class AiQaController {
         }
 
         return ResponseEntity.status(500)
+                .contentType(MediaType.APPLICATION_JSON)
                 .body(Map.of("code", 500, "message", message));
     }
 
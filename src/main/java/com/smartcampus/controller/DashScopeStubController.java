@@ -0,0 +1,179 @@
+package com.smartcampus.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcampus.service.TokenCounter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 通义千问桩服务 - OpenAI/DashScope 兼容模式的 /chat/completions，仅在 stub 配置下启用
+ *
+ * 用于本地联调和压测：不需要真实 API Key，按配置模拟首包延迟、输出速率、
+ * 请求失败（返回 error-status）和流中途断开；流式请求带 stream_options.include_usage 时
+ * 在 [DONE] 之前输出用量分块，与真实接口一致。
+ */
+@Slf4j
+@Profile("stub")
+@RestController
+@RequestMapping("/stub/dashscope/v1")
+@RequiredArgsConstructor
+public class DashScopeStubController {
+
+    private static final String ANSWER_TEXT = "这是桩服务生成的模拟回答，用于联调和压测。"
+            + "学习时建议先梳理知识框架，再通过练习巩固重点，最后定期复习薄弱环节。";
+
+    private final TokenCounter tokenCounter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${ai.stub.first-token-latency-ms:300}")
+    private long firstTokenLatencyMs;
+
+    @Value("${ai.stub.tokens-per-second:50}")
+    private int tokensPerSecond;
+
+    @Value("${ai.stub.answer-tokens:200}")
+    private int answerTokens;
+
+    @Value("${ai.stub.error-rate:0}")
+    private double errorRate;  // 直接返回 error-status 的概率
+
+    @Value("${ai.stub.error-status:503}")
+    private int errorStatus;
+
+    @Value("${ai.stub.abort-rate:0}")
+    private double abortRate;  // 输出一半后断开的概率
+
+    /**
+     * 响应体声明为 Publisher：声明为 ResponseEntity<?> 时 MVC 不按响应式类型处理，流式响应无法写出
+     */
+    @PostMapping(value = "/chat/completions",
+            produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Publisher<?>> chatCompletions(@RequestBody Map<String, Object> request) {
+        String model = String.valueOf(request.getOrDefault("model", "qwen-max"));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < errorRate) {
+            log.debug("桩服务注入错误: status={}", errorStatus);
+            return ResponseEntity.status(errorStatus)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Mono.just(Map.of("error", Map.of("message", "stub injected error", "code", errorStatus))));
+        }
+
+        int promptTokens = countPromptTokens(request.get("messages"));
+        if (!Boolean.TRUE.equals(request.get("stream"))) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(completion(model, promptTokens));
+        }
+
+        boolean includeUsage = request.get("stream_options") instanceof Map<?, ?> options
+                && Boolean.TRUE.equals(options.get("include_usage"));
+        boolean abort = random.nextDouble() < abortRate;
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(stream(model, promptTokens, includeUsage, abort));
+    }
+
+    private Flux<ServerSentEvent<String>> stream(String model, int promptTokens, boolean includeUsage,
+                                                 boolean abort) {
+        String id = "chatcmpl-stub-" + UUID.randomUUID();
+        Duration interval = Duration.ofNanos(1_000_000_000L / Math.max(1, tokensPerSecond));
+        int emitted = abort ? answerTokens / 2 : answerTokens;
+
+        // delayElements 按下游请求逐个发出；Flux.interval 不支持 MVC 写出时每次只请求一个元素的背压
+        Flux<ServerSentEvent<String>> tokens = Flux.range(0, emitted)
+                .delayElements(interval)
+                .delaySubscription(Duration.ofMillis(firstTokenLatencyMs))
+                .map(i -> chunk(id, model, Map.of("content", token(i)), null));
+        if (abort) {
+            return tokens.concatWith(Mono.error(new IllegalStateException("stub injected abort")));
+        }
+
+        List<ServerSentEvent<String>> tail = new ArrayList<>(3);
+        tail.add(chunk(id, model, Map.of(), "stop"));
+        if (includeUsage) {
+            tail.add(event(Map.of("id", id, "object", "chat.completion.chunk", "model", model,
+                    "choices", List.of(), "usage", usage(promptTokens, answerTokens))));
+        }
+        tail.add(ServerSentEvent.builder("[DONE]").build());
+        return tokens.concatWith(Flux.fromIterable(tail));
+    }
+
+    private Mono<Map<String, Object>> completion(String model, int promptTokens) {
+        long latencyMs = firstTokenLatencyMs + answerTokens * 1000L / Math.max(1, tokensPerSecond);
+        StringBuilder content = new StringBuilder(answerTokens);
+        for (int i = 0; i < answerTokens; i++) {
+            content.append(token(i));
+        }
+        Map<String, Object> body = Map.of(
+                "id", "chatcmpl-stub-" + UUID.randomUUID(),
+                "object", "chat.completion",
+                "model", model,
+                "choices", List.of(Map.of(
+                        "index", 0,
+                        "message", Map.of("role", "assistant", "content", content.toString()),
+                        "finish_reason", "stop")),
+                "usage", usage(promptTokens, answerTokens));
+        return Mono.delay(Duration.ofMillis(latencyMs)).thenReturn(body);
+    }
+
+    private ServerSentEvent<String> chunk(String id, String model, Map<String, Object> delta, String finishReason) {
+        Map<String, Object> choice = new HashMap<>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        return event(Map.of("id", id, "object", "chat.completion.chunk", "model", model,
+                "choices", List.of(choice)));
+    }
+
+    private ServerSentEvent<String> event(Map<String, Object> data) {
+        try {
+            return ServerSentEvent.builder(objectMapper.writeValueAsString(data)).build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, Object> usage(int promptTokens, int completionTokens) {
+        return Map.of(
+                "prompt_tokens", promptTokens,
+                "completion_tokens", completionTokens,
+                "total_tokens", promptTokens + completionTokens);
+    }
+
+    private static String token(int index) {
+        return String.valueOf(ANSWER_TEXT.charAt(index % ANSWER_TEXT.length()));
+    }
+
+    private int countPromptTokens(Object messages) {
+        int total = 0;
+        if (messages instanceof List<?> list) {
+            for (Object message : list) {
+                if (message instanceof Map<?, ?> map && map.get("content") instanceof String content) {
+                    total += tokenCounter.count(content) + TokenCounter.MESSAGE_OVERHEAD_TOKENS;
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,17 @@
+package com.smartcampus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 对话轮次（用于短期记忆）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationTurn {
+    private String question;
+    private String answer;
+    private Long fileId;
+}
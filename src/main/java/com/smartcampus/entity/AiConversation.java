@@ -5,7 +5,12 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "ai_conversations")
+@Table(name = "ai_conversations",
+        indexes = {
+                // 会话列表/会话历史查询：按用户、会话分组并按时间排序
+                @Index(name = "idx_ai_conversations_user_session_created",
+                        columnList = "user_id, session_id, created_at")
+        })
 @Data
 public class AiConversation {
     @Id
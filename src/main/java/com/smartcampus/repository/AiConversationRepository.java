@@ -8,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -88,20 +89,54 @@ public interface AiConversationRepository extends JpaRepository<AiConversation,
     Object[] getRatingStatsByUserId(@Param("userId") Long userId);
 
     /**
-     * 获取用户的会话列表摘要（每个会话一条记录）
+     * 会话摘要查询：先按会话分组聚合创建时间、消息数、关联文件，分页游标和 LIMIT 作用在分组结果上，
+     * 再只为本页会话查标题（最早的非空标题）和预览（最新问题）。
+     * 分组和两个子查询都走索引 (user_id, session_id, created_at)，见 db/ai_conversations_indexes.sql。
      */
-    @Query(value = "SELECT " +
-            "    a.session_id, " +
-            "    (SELECT a2.title FROM ai_conversations a2 WHERE a2.session_id = a.session_id AND a2.title IS NOT NULL ORDER BY a2.created_at ASC LIMIT 1) as title, " +
-            "    (SELECT a3.question FROM ai_conversations a3 WHERE a3.session_id = a.session_id ORDER BY a3.created_at DESC LIMIT 1) as preview, " +
-            "    MIN(a.created_at) as create_time, " +
-            "    COUNT(a.id) as message_count, " +
-            "    MAX(a.file_id) as file_id " +
-            "FROM ai_conversations a " +
-            "WHERE a.user_id = ?1 " +
-            "GROUP BY a.session_id " +
-            "ORDER BY create_time DESC", nativeQuery = true)
-    List<Object[]> findSessionSummaries(Long userId);
+    String SESSION_SUMMARY_SELECT = "SELECT s.session_id, " +
+            "    (SELECT t.title FROM ai_conversations t " +
+            "     WHERE t.user_id = :userId AND t.session_id = s.session_id AND t.title IS NOT NULL " +
+            "     ORDER BY t.created_at LIMIT 1) as title, " +
+            "    (SELECT p.question FROM ai_conversations p " +
+            "     WHERE p.user_id = :userId AND p.session_id = s.session_id " +
+            "     ORDER BY p.created_at DESC, p.id DESC LIMIT 1) as preview, " +
+            "    s.create_time, s.message_count, s.file_id " +
+            "FROM (";
+
+    String SESSION_GROUPS = "SELECT a.session_id, MIN(a.created_at) as create_time, " +
+            "        COUNT(a.id) as message_count, MAX(a.file_id) as file_id " +
+            "    FROM ai_conversations a " +
+            "    WHERE a.user_id = :userId " +
+            "    GROUP BY a.session_id ";
+
+    String SESSION_GROUPS_ORDER = "ORDER BY create_time DESC, session_id DESC ";
+
+    String SESSION_SUMMARY_ORDER = ") s ORDER BY s.create_time DESC, s.session_id DESC";
+
+    /**
+     * 获取用户的会话列表摘要（每个会话一条记录，全部返回）
+     */
+    @Query(value = SESSION_SUMMARY_SELECT + SESSION_GROUPS + SESSION_SUMMARY_ORDER, nativeQuery = true)
+    List<Object[]> findSessionSummaries(@Param("userId") Long userId);
+
+    /**
+     * 会话列表第一页（按创建时间倒序）
+     */
+    @Query(value = SESSION_SUMMARY_SELECT + SESSION_GROUPS + SESSION_GROUPS_ORDER + "LIMIT :limit" +
+            SESSION_SUMMARY_ORDER, nativeQuery = true)
+    List<Object[]> findSessionSummariesFirstPage(@Param("userId") Long userId, @Param("limit") int limit);
+
+    /**
+     * 会话列表后续页：游标为上一页最后一条的 (创建时间, 会话ID)，在分组后、取页前过滤
+     */
+    @Query(value = SESSION_SUMMARY_SELECT + SESSION_GROUPS +
+            "HAVING (MIN(a.created_at), a.session_id) < (:createTime, :sessionId) " +
+            SESSION_GROUPS_ORDER + "LIMIT :limit" +
+            SESSION_SUMMARY_ORDER, nativeQuery = true)
+    List<Object[]> findSessionSummariesAfter(@Param("userId") Long userId,
+                                             @Param("createTime") LocalDateTime createTime,
+                                             @Param("sessionId") String sessionId,
+                                             @Param("limit") int limit);
 
     /**
      * 按用户ID和会话ID查询，按创建时间正序排列
@@ -121,4 +156,17 @@ public interface AiConversationRepository extends JpaRepository<AiConversation,
             @Param("sessionId") String sessionId,
             @Param("limit") int limit);
 
-}
\ No newline at end of file
+    /**
+     * 按时间正序取会话中 [offset, offset + limit) 的对话，用于增量生成会话摘要
+     */
+    @Query("SELECT c FROM AiConversation c " +
+            "WHERE c.userId = :userId AND c.sessionId = :sessionId " +
+            "ORDER BY c.createdAt ASC, c.id ASC " +
+            "LIMIT :limit OFFSET :offset")
+    List<AiConversation> findSessionRange(
+            @Param("userId") Long userId,
+            @Param("sessionId") String sessionId,
+            @Param("offset") int offset,
+            @Param("limit") int limit);
+
+}
@@ -1,4 +1,50 @@
 package com.smartcampus.repository;
 
-public class KnowledgeDocumentRepository {
+import com.smartcampus.entity.KnowledgeDocument;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface KnowledgeDocumentRepository extends JpaRepository<KnowledgeDocument, Long> {
+
+    /**
+     * 加载所有有效文档的向量（只取ID、向量和来源列，不加载正文）
+     * 返回: [id, vectorEmbedding, sourceType, sourcePath]
+     */
+    @Query("SELECT k.id, k.vectorEmbedding, k.sourceType, k.sourcePath FROM KnowledgeDocument k " +
+            "WHERE k.isActive = true AND k.vectorEmbedding IS NOT NULL")
+    List<Object[]> findActiveEmbeddings();
+
+    /**
+     * 加载某个来源的有效向量
+     * 返回: [id, vectorEmbedding]
+     */
+    @Query("SELECT k.id, k.vectorEmbedding FROM KnowledgeDocument k " +
+            "WHERE k.sourceType = :sourceType AND k.sourcePath = :sourcePath " +
+            "AND k.isActive = true AND k.vectorEmbedding IS NOT NULL")
+    List<Object[]> findActiveEmbeddingsBySource(@Param("sourceType") String sourceType,
+                                                @Param("sourcePath") String sourcePath);
+
+    /**
+     * 某个来源的分块全部写完后统一置为有效（文件入库完成标记）
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE KnowledgeDocument k SET k.isActive = true " +
+            "WHERE k.sourceType = :sourceType AND k.sourcePath = :sourcePath")
+    int activateBySource(@Param("sourceType") String sourceType, @Param("sourcePath") String sourcePath);
+
+    /**
+     * 删除某个来源的全部分块（文件重新入库时使用）
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM KnowledgeDocument k WHERE k.sourceType = :sourceType AND k.sourcePath = :sourcePath")
+    int deleteBySource(@Param("sourceType") String sourceType, @Param("sourcePath") String sourcePath);
 }
@@ -38,4 +38,18 @@ public interface LearningFileRepository extends JpaRepository<LearningFile, Long
      * 统计用户的文件数量
      */
     long countByUserIdAndStatus(Long userId, String status);
-}
\ No newline at end of file
+
+    /**
+     * 查询会话中引用过的文件（去重），只取名称和摘要
+     * 返回 [id, originalName, summary]，按文件ID排序
+     */
+    @Query("SELECT l.id, l.originalName, l.summary FROM LearningFile l WHERE l.id IN " +
+            "(SELECT a.fileId FROM AiConversation a WHERE a.userId = :userId AND a.sessionId = :sessionId " +
+            "AND a.fileId IS NOT NULL) ORDER BY l.id")
+    List<Object[]> findSessionFileSummaries(@Param("userId") Long userId, @Param("sessionId") String sessionId);
+
+    /**
+     * 引用同一存储文件的记录数（按内容去重存储的引用计数）
+     */
+    long countByFilePath(String filePath);
+}
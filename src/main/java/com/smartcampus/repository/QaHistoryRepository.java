@@ -1,4 +1,22 @@
 package com.smartcampus.repository;
 
-public class QaHistoryRepository {
+import com.smartcampus.entity.QaHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface QaHistoryRepository extends JpaRepository<QaHistory, Long> {
+
+    /**
+     * 按是否命中缓存统计调用次数与平均响应时间
+     * 返回 [fromCache, count, avgResponseTime]
+     */
+    @Query("SELECT q.fromCache, COUNT(q), AVG(q.responseTime) FROM QaHistory q " +
+            "WHERE q.askTime >= :since GROUP BY q.fromCache")
+    List<Object[]> summarizeCacheUsageSince(@Param("since") LocalDateTime since);
 }
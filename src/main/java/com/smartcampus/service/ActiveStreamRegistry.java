@@ -0,0 +1,76 @@
+package com.smartcampus.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 活跃流登记表 - 同一用户的同一会话只保留一个进行中的流式回答
+ *
+ * 新流登记时通知旧流取消，被取代的流停止转发并取消上游请求，不再占用模型并发。
+ * 登记表为进程内状态，多实例部署时只对落在同一实例的请求生效。
+ */
+@Slf4j
+@Component
+public class ActiveStreamRegistry {
+
+    private final Map<String, Registration> active = new ConcurrentHashMap<>();
+
+    /**
+     * 登记新流，同一会话已有的流被标记为已取代
+     */
+    public Registration register(Long userId, String sessionId) {
+        String key = userId + ":" + sessionId;
+        Registration registration = new Registration(key);
+        Registration previous = active.put(key, registration);
+        if (previous != null) {
+            log.info("会话发起新的提问，取消旧的流式回答，会话ID: {}", sessionId);
+            previous.supersede();
+        }
+        return registration;
+    }
+
+    public int activeCount() {
+        return active.size();
+    }
+
+    /**
+     * 单个流的登记项
+     */
+    public final class Registration {
+        private final String key;
+        private final Sinks.One<Boolean> signal = Sinks.one();
+        private volatile boolean superseded;
+
+        private Registration(String key) {
+            this.key = key;
+        }
+
+        /**
+         * 被取代时发出信号，用于 takeUntilOther
+         */
+        public Mono<Boolean> supersededSignal() {
+            return signal.asMono();
+        }
+
+        public boolean isSuperseded() {
+            return superseded;
+        }
+
+        /**
+         * 流结束（完成、出错或取消）时注销，只移除自己
+         */
+        public void release() {
+            active.remove(key, this);
+        }
+
+        private void supersede() {
+            superseded = true;
+            signal.tryEmitValue(Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.smartcampus.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * AI 非流式响应缓存 - 进程内 + Redis 两级
+ *
+ * 键为 模型 + 采样参数 + 规范化消息 的 SHA-256：消息内容做 NFC 规范化、
+ * 去掉首尾空白并把连续空白折叠为一个空格，仅格式不同的相同提示词命中同一条目。
+ * 进程内一级按总字符数淘汰；Redis 二级多实例共享；两级使用相同的写入后过期时间。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AiResponseCache {
+
+    private static final String KEY_PREFIX = "ai:resp:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.response-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.response-cache.redis-enabled:true}")
+    private boolean redisEnabled;
+
+    @Value("${ai.response-cache.max-chars:5000000}")
+    private long maxChars;  // 进程内缓存总字符数上限
+
+    @Value("${ai.response-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private Cache<String, String> localCache;
+    private Counter redisHits;
+
+    @PostConstruct
+    public void initCache() {
+        localCache = Caffeine.newBuilder()
+                .maximumWeight(maxChars)
+                .weigher((String key, String value) -> value.length())
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "ai-response");
+        redisHits = Counter.builder("ai.response.cache.redis.hits").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存键
+     */
+    public String key(String model, List<Map<String, String>> messages, Map<String, Object> params) {
+        StringBuilder canonical = new StringBuilder(256);
+        canonical.append(model).append('\u0001');
+        // 参数按名称排序，避免 Map 迭代顺序影响键
+        new TreeMap<>(params).forEach((name, value) ->
+                canonical.append(name).append('=').append(value).append('\u0001'));
+        for (Map<String, String> message : messages) {
+            canonical.append(message.get("role")).append('\u0002')
+                    .append(normalize(message.get("content"))).append('\u0001');
+        }
+        return KEY_PREFIX + sha256(canonical.toString());
+    }
+
+    /**
+     * 查询缓存，未命中返回 null；Redis 命中时回填进程内缓存
+     */
+    public String get(String key) {
+        String value = localCache.getIfPresent(key);
+        if (value != null || !redisEnabled) {
+            return value;
+        }
+
+        try {
+            value = redisTemplate.opsForValue().get(key);
+        } catch (Exception e) {
+            log.warn("读取Redis响应缓存失败: {}", e.getMessage());
+            return null;
+        }
+        if (value != null) {
+            redisHits.increment();
+            localCache.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 写入两级缓存
+     */
+    public void put(String key, String value) {
+        localCache.put(key, value);
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, value, Duration.ofMinutes(ttlMinutes));
+        } catch (Exception e) {
+            log.warn("写入Redis响应缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private static String normalize(String content) {
+        if (content == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(content, Normalizer.Form.NFC).strip();
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+}
@@ -1,16 +1,24 @@
 package com.smartcampus.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.smartcampus.dto.ConversationTurn;
 import com.smartcampus.entity.AiConversation;
+import com.smartcampus.entity.KnowledgeDocument;
 import com.smartcampus.entity.LearningFile;
 import com.smartcampus.repository.AiConversationRepository;
 import com.smartcampus.repository.LearningFileRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 对话上下文服务 - 维护短期记忆和文件上下文
@@ -22,18 +30,62 @@ public class ConversationContextService {
 
     private final AiConversationRepository conversationRepository;
     private final LearningFileRepository learningFileRepository;
-    private final FileProcessingService fileProcessingService;
+    private final ExtractedTextCache extractedTextCache;
     private final FileSummaryService fileSummaryService;
+    private final RagService ragService;
+    private final ConversationMemoryStore conversationMemoryStore;
+    private final TokenCounter tokenCounter;
+    private final SessionSummaryService sessionSummaryService;
+    private final MeterRegistry meterRegistry;
 
     @Value("${ai.context.max-history:5}")
     private int maxHistoryTurns;  // 最多保留5轮完整对话
 
-    // 短期记忆缓存：会话ID -> 最近N轮对话
-    private final Map<String, CircularBuffer<ConversationTurn>> shortTermMemory = new ConcurrentHashMap<>();
+    // ===== 上下文各部分的 token 预算，系统、文件、问题未用完的部分转给历史 =====
+    @Value("${ai.context.budget.system:1000}")
+    private int systemBudget;  // 基础提示 + 会话文件摘要
+
+    @Value("${ai.context.budget.files:1500}")
+    private int filesBudget;  // 参考文件片段
+
+    @Value("${ai.context.budget.history:3000}")
+    private int historyBudget;  // 早期对话摘要 + 最近几轮对话
+
+    @Value("${ai.context.budget.question:1000}")
+    private int questionBudget;  // 当前问题
+
+    @Value("${ai.context.summary.max-tokens:400}")
+    private int summaryMaxTokens;  // 历史预算中为早期对话摘要预留的额度
+
+    @Value("${ai.rag.top-k:3}")
+    private int fileChunkTopK;  // 每个文件检索的相关分块数
+
+    @Value("${ai.context.max-sessions:10000}")
+    private long maxSessions;  // 最多缓存的会话文件提示数
+
+    @Value("${ai.context.session-idle-minutes:30}")
+    private long sessionIdleMinutes;  // 会话闲置过期时间
+
+    // 会话文件提示片段缓存：用户ID:会话ID -> 文件名+摘要列表（会话关联新文件时失效）
+    private Cache<String, String> sessionFilesPromptCache;
+
+    @PostConstruct
+    public void initCaches() {
+        sessionFilesPromptCache = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(Duration.ofMinutes(sessionIdleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, sessionFilesPromptCache, "session-files-prompt");
+    }
 
     /**
      * 构建完整的对话上下文
      *
+     * 按预算规划：系统提示、参考文件、当前问题各自截断到自己的预算，剩余额度全部给历史；
+     * 历史先放早期对话摘要，再从最近一轮往前整轮放入。移出窗口的轮次由会话摘要覆盖，
+     * 因此提示长度与会话长度无关。
+     *
      * @param userId        用户ID
      * @param sessionId     会话ID
      * @param currentQuestion 当前问题
@@ -43,59 +95,151 @@ public class ConversationContextService {
     public List<Map<String, String>> buildFullContext(Long userId, String sessionId,
                                                       String currentQuestion,
                                                       Long currentFileId) {
-        List<Map<String, String>> messages = new ArrayList<>();
-
-        // 1. 系统提示（包含用户文件摘要）
-        String systemPrompt = buildSystemPromptWithFiles(userId, sessionId);
-        messages.add(Map.of("role", "system", "content", systemPrompt));
+        List<ConversationTurn> recentTurns = getShortTermMemory(userId, sessionId);
+
+        // 1. 系统提示（包含会话文件摘要）
+        String systemPrompt = tokenCounter.truncate(buildSystemPromptWithFiles(userId, sessionId), systemBudget);
+        int systemTokens = tokenCounter.count(systemPrompt);
+
+        // 2. 当前问题
+        String question = tokenCounter.truncate(currentQuestion, questionBudget);
+        int questionTokens = tokenCounter.count(question);
+
+        // 3. 参考文件：本轮上传的文件，否则沿用最近一轮关联的文件；按当前问题检索相关片段
+        Long focusFileId = currentFileId != null ? currentFileId : latestFileId(recentTurns);
+        String fileContext = buildFileContext(focusFileId, currentQuestion, filesBudget);
+        int fileTokens = tokenCounter.count(fileContext);
+
+        // 4. 历史：基础预算 + 前面各部分未用完的额度
+        int historyTokensLeft = historyBudget
+                + Math.max(0, systemBudget - systemTokens)
+                + Math.max(0, filesBudget - fileTokens)
+                + Math.max(0, questionBudget - questionTokens);
+        // 短期记忆已满说明可能存在更早的对话，先为摘要预留额度
+        int summaryReserve = recentTurns.size() >= maxHistoryTurns
+                ? Math.min(summaryMaxTokens, historyTokensLeft / 2) : 0;
+        historyTokensLeft -= summaryReserve;
+
+        Deque<Map<String, String>> history = new ArrayDeque<>();
+        int includedTurns = 0;
+        for (int i = recentTurns.size() - 1; i >= 0; i--) {
+            ConversationTurn turn = recentTurns.get(i);
+            Map<String, String> user = Map.of("role", "user", "content", turn.getQuestion());
+            Map<String, String> assistant = Map.of("role", "assistant", "content", turn.getAnswer());
+            int turnTokens = tokenCounter.countMessage(user) + tokenCounter.countMessage(assistant);
+            if (turnTokens > historyTokensLeft) {
+                break;
+            }
+            history.addFirst(assistant);
+            history.addFirst(user);
+            historyTokensLeft -= turnTokens;
+            includedTurns++;
+        }
 
-        // 2. 短期记忆：最近几轮完整对话
-        List<ConversationTurn> recentTurns = getShortTermMemory(sessionId);
-        for (ConversationTurn turn : recentTurns) {
-            // 增强问题：如果这一轮有文件，加上文件上下文
-            String enhancedQuestion = enhanceQuestionWithFile(turn.getQuestion(), turn.getFileId());
-            messages.add(Map.of("role", "user", "content", enhancedQuestion));
-            messages.add(Map.of("role", "assistant", "content", turn.getAnswer()));
+        // 5. 早期对话摘要：覆盖窗口之外的全部轮次（后台增量生成，本轮使用已有摘要）
+        historyTokensLeft += summaryReserve;
+        long olderTurns = countOlderTurns(userId, sessionId, recentTurns.size(), includedTurns);
+        if (olderTurns > 0) {
+            String summary = sessionSummaryService.getSummary(userId, sessionId, olderTurns);
+            if (summary != null && !summary.isEmpty() && historyTokensLeft > 0) {
+                systemPrompt += "\n\n【早期对话摘要】\n" + tokenCounter.truncate(summary, historyTokensLeft);
+            }
         }
 
-        // 3. 当前问题（如果有文件，增强）
-        String enhancedCurrentQuestion = enhanceQuestionWithFile(currentQuestion, currentFileId);
-        messages.add(Map.of("role", "user", "content", enhancedCurrentQuestion));
+        List<Map<String, String>> messages = new ArrayList<>(history.size() + 2);
+        messages.add(Map.of("role", "system", "content", systemPrompt));
+        messages.addAll(history);
+        messages.add(Map.of("role", "user", "content",
+                fileContext != null ? question + "\n\n" + fileContext : question));
 
-        log.info("构建上下文完成，消息数: {}, 历史轮数: {}", messages.size(), recentTurns.size());
+        log.info("构建上下文完成，消息数: {}, 历史轮数: {}/{}, 早期轮数: {}, token: 系统 {}, 文件 {}, 问题 {}, 总计 {}{}",
+                messages.size(), includedTurns, recentTurns.size(), olderTurns,
+                systemTokens, fileTokens, questionTokens, tokenCounter.countMessages(messages),
+                tokenCounter.isExact() ? "" : "（估算）");
 
         return messages;
     }
 
+    /**
+     * 最近一轮关联的文件
+     */
+    private Long latestFileId(List<ConversationTurn> turns) {
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            if (turns.get(i).getFileId() != null) {
+                return turns.get(i).getFileId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 未放入历史窗口的早期轮数
+     * 短期记忆未满时就是全部对话，无需查询；已满时以数据库中的总轮数为准
+     */
+    private long countOlderTurns(Long userId, String sessionId, int recentCount, int includedTurns) {
+        long total = recentCount < maxHistoryTurns
+                ? recentCount
+                : conversationRepository.countByUserIdAndSessionId(userId, sessionId);
+        return Math.max(0, total - includedTurns);
+    }
+
     /**
      * 更新短期记忆
+     * 会话已被淘汰时不重建：下一次读取会从数据库恢复（包含刚保存的这一轮）
      */
-    public void updateShortTermMemory(String sessionId, String question, String answer, Long fileId) {
-        CircularBuffer<ConversationTurn> buffer = shortTermMemory.computeIfAbsent(
-                sessionId,
-                k -> new CircularBuffer<>(maxHistoryTurns)
-        );
-
-        buffer.add(new ConversationTurn(question, answer, fileId));
-        log.debug("更新短期记忆，会话: {}, 当前大小: {}", sessionId, buffer.size());
+    public void updateShortTermMemory(Long userId, String sessionId, String question, String answer, Long fileId) {
+        conversationMemoryStore.appendTurn(memoryKey(userId, sessionId), new ConversationTurn(question, answer, fileId));
+        log.debug("更新短期记忆，会话: {}", sessionId);
     }
 
     /**
-     * 获取短期记忆
+     * 会话关联了新文件：在该轮对话落库之后调用，文件提示片段下次按数据库重建。
+     * 落库前失效的话，两步之间的请求会按旧的关联文件重建片段并重新写入缓存
      */
-    private List<ConversationTurn> getShortTermMemory(String sessionId) {
-        CircularBuffer<ConversationTurn> buffer = shortTermMemory.get(sessionId);
-        return buffer != null ? buffer.asList() : Collections.emptyList();
+    public void invalidateSessionFiles(Long userId, String sessionId) {
+        sessionFilesPromptCache.invalidate(memoryKey(userId, sessionId));
+    }
+
+    /**
+     * 获取短期记忆（未命中时从数据库恢复最近N轮）
+     */
+    private List<ConversationTurn> getShortTermMemory(Long userId, String sessionId) {
+        return conversationMemoryStore.getRecentTurns(memoryKey(userId, sessionId),
+                () -> loadShortTermMemory(userId, sessionId));
+    }
+
+    /**
+     * 从 ai_conversations 恢复最近N轮对话（按时间正序）
+     */
+    private List<ConversationTurn> loadShortTermMemory(Long userId, String sessionId) {
+        List<AiConversation> latest = conversationRepository.findByUserIdAndSessionIdOrderByCreatedAtDesc(
+                userId, sessionId, PageRequest.of(0, maxHistoryTurns));
+
+        // 查询结果按时间倒序，倒着写入以恢复时间顺序
+        List<ConversationTurn> turns = new ArrayList<>(latest.size());
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            AiConversation conv = latest.get(i);
+            turns.add(new ConversationTurn(conv.getQuestion(),
+                    conv.getAnswer() != null ? conv.getAnswer() : "", conv.getFileId()));
+        }
+        log.debug("恢复短期记忆，会话: {}, 轮数: {}", sessionId, turns.size());
+        return turns;
     }
 
     /**
      * 清理会话的短期记忆
      */
-    public void clearShortTermMemory(String sessionId) {
-        shortTermMemory.remove(sessionId);
+    public void clearShortTermMemory(Long userId, String sessionId) {
+        conversationMemoryStore.clear(memoryKey(userId, sessionId));
+        sessionFilesPromptCache.invalidate(memoryKey(userId, sessionId));
+        sessionSummaryService.invalidate(userId, sessionId);
         log.debug("清理短期记忆，会话: {}", sessionId);
     }
 
+    private String memoryKey(Long userId, String sessionId) {
+        return userId + ":" + sessionId;
+    }
+
     /**
      * 构建包含文件摘要的系统提示词
      */
@@ -124,117 +268,124 @@ public class ConversationContextService {
 
     /**
      * 获取当前会话关联的文件摘要
+     * 结果按会话缓存；仍有文件摘要未生成时不缓存，下一轮重新查询以拿到摘要
      */
     private String getSessionFilesSummary(Long userId, String sessionId) {
-        // 查询当前会话中所有涉及的文件ID
-        List<AiConversation> conversations = conversationRepository
-                .findByUserIdAndSessionIdOrderByCreatedAtAsc(userId, sessionId);
-
-        Set<Long> fileIds = new HashSet<>();
-        for (AiConversation conv : conversations) {
-            if (conv.getFileId() != null) {
-                fileIds.add(conv.getFileId());
-            }
+        String key = memoryKey(userId, sessionId);
+        String cached = sessionFilesPromptCache.getIfPresent(key);
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
         }
 
-        if (fileIds.isEmpty()) {
-            return null;
-        }
+        // 一次查询拿到会话内去重后的文件名和摘要
+        List<Object[]> files = learningFileRepository.findSessionFileSummaries(userId, sessionId);
 
+        boolean complete = true;
         StringBuilder sb = new StringBuilder();
-        sb.append("当前对话中上传的文件：\n");
-
-        for (Long fileId : fileIds) {
-            Optional<LearningFile> fileOpt = learningFileRepository.findById(fileId);
-            if (fileOpt.isPresent()) {
-                LearningFile file = fileOpt.get();
-                sb.append("- ").append(file.getOriginalName());
-                if (file.getSummary() != null && !file.getSummary().isEmpty()) {
-                    sb.append("（摘要：").append(file.getSummary()).append("）\n");
+        if (!files.isEmpty()) {
+            sb.append("当前对话中上传的文件：\n");
+            for (Object[] row : files) {
+                String originalName = (String) row[1];
+                String summary = (String) row[2];
+                sb.append("- ").append(originalName);
+                if (summary != null && !summary.isEmpty()) {
+                    sb.append("（摘要：").append(summary).append("）\n");
                 } else {
                     sb.append("\n");
+                    complete = false;
                 }
             }
         }
 
-        return sb.toString();
+        String fragment = sb.toString();
+        if (complete) {
+            sessionFilesPromptCache.put(key, fragment);
+        }
+        return fragment.isEmpty() ? null : fragment;
     }
 
     /**
-     * 增强问题：如果有关联文件，添加文件内容
+     * 参考文件片段：与问题最相关的分块，按原文顺序放入直到用完预算
+     * 文件尚未入库（刚上传、向量化未完成）时退化为截取文件开头
+     *
+     * @return 文件片段；没有文件时返回 null
      */
-    private String enhanceQuestionWithFile(String question, Long fileId) {
+    private String buildFileContext(Long fileId, String question, int budget) {
         if (fileId == null) {
-            return question;
+            return null;
         }
 
         try {
-            // 尝试从数据库获取文件
             Optional<LearningFile> fileOpt = learningFileRepository.findById(fileId);
             if (fileOpt.isPresent()) {
                 LearningFile file = fileOpt.get();
 
-                // 如果文件内容已经缓存过，直接使用
-                String fileContent = getCachedFileContent(fileId, file.getFilePath());
+                List<KnowledgeDocument> chunks = ragService.retrieveFileChunks(file, question, fileChunkTopK);
+                if (chunks != null && !chunks.isEmpty()) {
+                    StringBuilder sb = new StringBuilder("【参考文件：").append(file.getOriginalName()).append("（相关片段）】\n");
+                    int remaining = budget - tokenCounter.count(sb.toString());
+                    for (KnowledgeDocument chunk : chunks) {
+                        String piece = chunk.getContent() + "\n...\n";
+                        int pieceTokens = tokenCounter.count(piece);
+                        if (pieceTokens > remaining) {
+                            break;
+                        }
+                        sb.append(piece);
+                        remaining -= pieceTokens;
+                    }
+                    return sb.toString();
+                }
 
-                if (fileContent != null && !fileContent.isEmpty()) {
-                    // 限制内容长度
-                    String limitedContent = fileContent.length() > 1500 ?
-                            fileContent.substring(0, 1500) + "\n...(内容过长，已截断)" : fileContent;
+                // 文件内容按内容哈希缓存，同一份文件只解析一次
+                String fileContent = getCachedFileContent(file);
 
-                    return question + "\n\n【参考文件：" + file.getOriginalName() + "】\n" + limitedContent;
+                if (fileContent != null && !fileContent.isEmpty()) {
+                    String header = "【参考文件：" + file.getOriginalName() + "】\n";
+                    // 按 token 数限制内容长度
+                    String limitedContent = tokenCounter.truncate(fileContent,
+                            budget - tokenCounter.count(header) - 16);
+                    if (limitedContent.length() < fileContent.length()) {
+                        limitedContent += "\n...(内容过长，已截断)";
+                    }
+                    return header + limitedContent;
                 } else {
                     // 如果内容读取失败，只提供文件名
-                    return question + "\n\n【曾上传文件：" + file.getOriginalName() + "，但内容读取失败】";
+                    return "【曾上传文件：" + file.getOriginalName() + "，但内容读取失败】";
                 }
             }
         } catch (Exception e) {
-            log.error("增强问题失败: fileId={}", fileId, e);
+            log.error("读取参考文件失败: fileId={}", fileId, e);
         }
 
-        return question;
+        return null;
     }
 
-    // 简单的文件内容缓存
-    private final Map<Long, String> fileContentCache = new ConcurrentHashMap<>();
-
     /**
      * 获取缓存的文件内容（带重试机制）
      */
-    private String getCachedFileContent(Long fileId, String filePath) {
-        // 先查缓存
-        if (fileContentCache.containsKey(fileId)) {
-            return fileContentCache.get(fileId);
-        }
-
+    private String getCachedFileContent(LearningFile file) {
         int maxRetries = 3;
         int retryDelayMs = 200; // 重试间隔 200ms
 
         for (int retry = 0; retry < maxRetries; retry++) {
             try {
-                String content = fileProcessingService.extractTextFromFileByPath(filePath);
+                String content = extractedTextCache.getText(file);
 
                 // 检查是否解析成功（不包含错误标记）
-                if (content != null && !content.isEmpty() &&
-                        !content.startsWith("【文件解析失败") &&
-                        !content.startsWith("【文件不存在") &&
-                        !content.startsWith("【不支持的文件格式")) {
-
-                    fileContentCache.put(fileId, content);
+                if (content != null && !content.isEmpty() && !FileProcessingService.isExtractionError(content)) {
                     if (retry > 0) {
                         log.info("文件读取成功，重试次数: {}/{}", retry + 1, maxRetries);
                     }
                     return content;
                 }
 
-                // 如果是解析失败但不是错误信息，也缓存
                 if (content != null && !content.isEmpty()) {
                     log.warn("文件内容可能有问题: {}", content.substring(0, Math.min(100, content.length())));
                 }
 
             } catch (Exception e) {
                 log.warn("读取文件失败，重试 {}/{}: fileId={}, error={}",
-                        retry + 1, maxRetries, fileId, e.getMessage());
+                        retry + 1, maxRetries, file.getId(), e.getMessage());
             }
 
             // 最后一次重试失败，不再等待
@@ -249,59 +400,7 @@ public class ConversationContextService {
             }
         }
 
-        log.error("文件读取最终失败: fileId={}, filePath={}", fileId, filePath);
+        log.error("文件读取最终失败: fileId={}, filePath={}", file.getId(), file.getFilePath());
         return null;
     }
-
-    /**
-     * 对话轮次（用于短期记忆）
-     */
-    @lombok.Value
-    private static class ConversationTurn {
-        String question;
-        String answer;
-        Long fileId;
-    }
-
-    /**
-     * 循环缓冲区
-     */
-    private static class CircularBuffer<T> {
-        private final List<T> buffer;
-        private final int maxSize;
-        private int head = 0;
-        private int size = 0;
-
-        public CircularBuffer(int maxSize) {
-            this.maxSize = maxSize;
-            this.buffer = new ArrayList<>(maxSize);
-            for (int i = 0; i < maxSize; i++) {
-                buffer.add(null);
-            }
-        }
-
-        public synchronized void add(T item) {
-            buffer.set(head, item);
-            head = (head + 1) % maxSize;
-            if (size < maxSize) {
-                size++;
-            }
-        }
-
-        public synchronized int size() {
-            return size;
-        }
-
-        public synchronized List<T> asList() {
-            List<T> result = new ArrayList<>(size);
-            for (int i = 0; i < size; i++) {
-                int index = (head - size + i + maxSize) % maxSize;
-                T item = buffer.get(index);
-                if (item != null) {
-                    result.add(item);
-                }
-            }
-            return result;
-        }
-    }
-}
\ No newline at end of file
+}
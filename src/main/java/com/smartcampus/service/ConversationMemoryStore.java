@@ -0,0 +1,32 @@
+package com.smartcampus.service;
+
+import com.smartcampus.dto.ConversationTurn;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 短期记忆存储接口 - 每个会话保留最近N轮对话
+ *
+ * 通过 ai.context.store 选择实现：local（进程内）或 redis（多实例共享）
+ */
+public interface ConversationMemoryStore {
+
+    /**
+     * 读取会话最近N轮对话（按时间正序）
+     *
+     * @param sessionKey 会话键（用户ID:会话ID）
+     * @param loader     未命中时从数据库恢复的加载器，结果会回写到存储
+     */
+    List<ConversationTurn> getRecentTurns(String sessionKey, Supplier<List<ConversationTurn>> loader);
+
+    /**
+     * 追加一轮对话；会话未驻留时忽略，下次读取会从数据库恢复
+     */
+    void appendTurn(String sessionKey, ConversationTurn turn);
+
+    /**
+     * 清理会话
+     */
+    void clear(String sessionKey);
+}
@@ -0,0 +1,323 @@
+package com.smartcampus.service;
+
+import com.smartcampus.exception.BusinessException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 通义千问对话接口保护 - AIMD 自适应并发上限 + 熔断器
+ *
+ * 并发上限：从 initial-limit 开始，调用成功且延迟正常时加法增长（每次 +1/limit，最多到 max-limit），
+ * 超时、连接失败、429/5xx 或延迟超过阈值时乘法收缩；只有在途请求达到上限一半以上时才增长，
+ * 避免低负载下上限空涨。在途请求达到上限时立即拒绝，不排队。
+ * 流式、非流式对话调用都只经过这一个限流器（不再叠加 DownstreamLimiter 信号量）。
+ *
+ * 熔断器：统计最近 window-size 次调用，失败率超过阈值后断开，open-seconds 内全部快速失败；
+ * 之后进入半开状态，只放行 half-open-probes 个探测请求，全部成功则恢复，任一失败重新断开。
+ *
+ * 拒绝时抛出 503 业务异常（客户端可稍后重试）。状态由本对象锁保护，调用频率下锁开销可忽略。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DashScopeGuard {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private enum Outcome {
+        SUCCESS, FAILURE, IGNORED
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.upstream.initial-limit:${ai.task.max-concurrent:10}}")
+    private int initialLimit;
+
+    @Value("${ai.upstream.max-limit:50}")
+    private int maxLimit;
+
+    @Value("${ai.upstream.min-limit:1}")
+    private int minLimit;
+
+    @Value("${ai.upstream.backoff-ratio:0.7}")
+    private double backoffRatio;
+
+    @Value("${ai.upstream.latency-threshold-ms:30000}")
+    private long latencyThresholdMs;  // 超过该延迟（流式为首包延迟）视为拥塞
+
+    @Value("${ai.upstream.circuit.window-size:20}")
+    private int windowSize;
+
+    @Value("${ai.upstream.circuit.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${ai.upstream.circuit.failure-rate:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${ai.upstream.circuit.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${ai.upstream.circuit.half-open-probes:3}")
+    private int halfOpenProbes;
+
+    // ===== 以下状态由 this 锁保护 =====
+    private double limit;
+    private int inFlight;
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int probesInFlight;
+    private int probeSuccesses;
+    private boolean[] window;   // 最近调用结果，true 为失败
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+
+    private Counter limitRejections;
+    private Counter circuitRejections;
+    private Counter successes;
+    private Counter failures;
+
+    @PostConstruct
+    public void init() {
+        maxLimit = Math.max(1, maxLimit);
+        minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        window = new boolean[Math.max(1, windowSize)];
+
+        Gauge.builder("ai.upstream.limit", this, DashScopeGuard::currentLimit).register(meterRegistry);
+        Gauge.builder("ai.upstream.inflight", this, DashScopeGuard::currentInFlight).register(meterRegistry);
+        Gauge.builder("ai.upstream.circuit.state", this, g -> g.currentState().ordinal())
+                .description("0=closed, 1=half-open, 2=open")
+                .register(meterRegistry);
+        limitRejections = Counter.builder("ai.upstream.rejected").tag("reason", "limit").register(meterRegistry);
+        circuitRejections = Counter.builder("ai.upstream.rejected").tag("reason", "circuit").register(meterRegistry);
+        successes = Counter.builder("ai.upstream.calls").tag("outcome", "success").register(meterRegistry);
+        failures = Counter.builder("ai.upstream.calls").tag("outcome", "failure").register(meterRegistry);
+    }
+
+    /**
+     * 保护非流式调用：延迟按整次调用计算
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            Permit permit = acquire();
+            return call
+                    .doOnSuccess(value -> permit.complete())
+                    .doOnError(permit::fail)
+                    .doOnCancel(permit::ignore);
+        });
+    }
+
+    /**
+     * 保护流式调用：延迟按首个元素到达时间计算
+     */
+    public <T> Flux<T> protectStream(Flux<T> stream) {
+        return Flux.defer(() -> {
+            Permit permit = acquire();
+            return stream
+                    .doOnNext(value -> permit.markResponse())
+                    .doOnComplete(permit::complete)
+                    .doOnError(permit::fail)
+                    .doOnCancel(permit::ignore);
+        });
+    }
+
+    public synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int currentInFlight() {
+        return inFlight;
+    }
+
+    public synchronized State currentState() {
+        return state;
+    }
+
+    private synchronized Permit acquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < TimeUnit.SECONDS.toNanos(openSeconds)) {
+                circuitRejections.increment();
+                throw new BusinessException(503, "AI服务暂时不可用，请稍后重试");
+            }
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+            log.info("AI服务熔断器进入半开状态，开始探测");
+        }
+
+        boolean probe = false;
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= halfOpenProbes) {
+                circuitRejections.increment();
+                throw new BusinessException(503, "AI服务暂时不可用，请稍后重试");
+            }
+            probe = true;
+        }
+
+        if (inFlight >= (int) limit) {
+            limitRejections.increment();
+            throw new BusinessException(503, "AI服务繁忙，请稍后重试");
+        }
+
+        inFlight++;
+        if (probe) {
+            probesInFlight++;
+        }
+        return new Permit(probe);
+    }
+
+    /**
+     * 当前状态：并发上限、在途请求数、熔断器状态（用于状态端点）
+     */
+    public synchronized Map<String, Object> snapshot() {
+        return Map.of(
+                "limit", (int) limit,
+                "maxLimit", maxLimit,
+                "inFlight", inFlight,
+                "circuit", state.name()
+        );
+    }
+
+    private synchronized void release(boolean probe, Outcome outcome, long latencyNanos) {
+        int concurrency = inFlight--;
+        if (outcome == Outcome.IGNORED) {
+            if (probe) {
+                probesInFlight--;
+            }
+            return;
+        }
+
+        boolean failed = outcome == Outcome.FAILURE;
+        (failed ? failures : successes).increment();
+
+        // AIMD
+        if (failed || latencyNanos > TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs)) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (concurrency * 2 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+
+        // 熔断器
+        if (probe) {
+            probesInFlight--;
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (failed) {
+                trip();
+            } else if (++probeSuccesses >= halfOpenProbes) {
+                state = State.CLOSED;
+                resetWindow();
+                log.info("AI服务熔断器恢复");
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(failed);
+            if (windowCount >= minimumCalls && windowFailures >= failureRateThreshold * windowCount) {
+                trip();
+            }
+        }
+    }
+
+    private void trip() {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        resetWindow();
+        log.warn("AI服务熔断器断开，{} 秒内请求将快速失败，当前并发上限: {}", openSeconds, (int) limit);
+    }
+
+    private void record(boolean failed) {
+        if (windowCount == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowPosition] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void resetWindow() {
+        windowPosition = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    /**
+     * 是否为上游健康问题：超时、连接失败、429、5xx；其他错误（如 400）不计入
+     */
+    private static boolean isUpstreamFailure(Throwable error) {
+        if (error instanceof TimeoutException || error instanceof WebClientRequestException
+                || error instanceof IOException) {
+            return true;
+        }
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return false;
+    }
+
+    /**
+     * 单次调用许可，结果只上报一次
+     */
+    private final class Permit {
+        private final boolean probe;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long responseNanos;
+
+        private Permit(boolean probe) {
+            this.probe = probe;
+        }
+
+        void markResponse() {
+            if (responseNanos == 0) {
+                responseNanos = System.nanoTime();
+            }
+        }
+
+        void complete() {
+            long end = responseNanos != 0 ? responseNanos : System.nanoTime();
+            finish(Outcome.SUCCESS, end - startNanos);
+        }
+
+        void fail(Throwable error) {
+            finish(isUpstreamFailure(error) ? Outcome.FAILURE : Outcome.IGNORED, System.nanoTime() - startNanos);
+        }
+
+        void ignore() {
+            finish(Outcome.IGNORED, 0);
+        }
+
+        private void finish(Outcome outcome, long latencyNanos) {
+            if (released.compareAndSet(false, true)) {
+                release(probe, outcome, latencyNanos);
+            }
+        }
+    }
+}
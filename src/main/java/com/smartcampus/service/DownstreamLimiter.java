@@ -0,0 +1,128 @@
+package com.smartcampus.service;
+
+import com.smartcampus.exception.BusinessException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下游并发限制 - 每个下游一个信号量
+ *
+ * 虚拟线程下线程数不再限制并发，需要在调用下游前显式获取许可：
+ * <pre>
+ * try (DownstreamLimiter.Permit permit = downstreamLimiter.acquire(DownstreamLimiter.EMBEDDING)) {
+ *     ...
+ * }
+ * </pre>
+ * 等待超过 ai.downstream.acquire-timeout-ms 仍无许可时抛出 503 业务异常。
+ * 通义千问对话接口不在此限制，由 DashScopeGuard 的自适应上限控制。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DownstreamLimiter {
+
+    public static final String EMBEDDING = "embedding";  // 向量化接口
+    public static final String EXTRACTION = "extraction"; // 文件解析（CPU 密集）
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.downstream.embedding.max-concurrent:4}")
+    private int embeddingMaxConcurrent;
+
+    @Value("${ai.downstream.extraction.max-concurrent:0}")
+    private int extractionMaxConcurrent;  // 0 表示按 CPU 核数
+
+    @Value("${ai.downstream.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMs;
+
+    private final Map<String, Semaphore> semaphores = new HashMap<>();
+    private final Map<String, Integer> limits = new HashMap<>();
+    private final Map<String, Counter> rejections = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        int extraction = extractionMaxConcurrent > 0
+                ? extractionMaxConcurrent : Runtime.getRuntime().availableProcessors();
+        register(EMBEDDING, embeddingMaxConcurrent);
+        register(EXTRACTION, extraction);
+    }
+
+    private void register(String downstream, int permits) {
+        Semaphore semaphore = new Semaphore(Math.max(1, permits), true);
+        semaphores.put(downstream, semaphore);
+        limits.put(downstream, Math.max(1, permits));
+        Gauge.builder("downstream.permits.available", semaphore, Semaphore::availablePermits)
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        Gauge.builder("downstream.permits.waiting", semaphore, Semaphore::getQueueLength)
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        rejections.put(downstream, Counter.builder("downstream.rejected")
+                .tag("downstream", downstream)
+                .register(meterRegistry));
+        log.info("下游并发限制: {} = {}", downstream, Math.max(1, permits));
+    }
+
+    /**
+     * 获取下游调用许可，使用 try-with-resources 释放
+     */
+    public Permit acquire(String downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        if (semaphore == null) {
+            throw new IllegalArgumentException("未知下游: " + downstream);
+        }
+
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(503, "请求被中断");
+        }
+        if (!acquired) {
+            rejections.get(downstream).increment();
+            log.warn("下游繁忙，等待许可超时: {}", downstream);
+            throw new BusinessException(503, "AI服务繁忙，请稍后重试");
+        }
+        return semaphore::release;
+    }
+
+    /**
+     * 各下游当前状态：并发上限、可用许可、进行中调用数、排队等待数（用于状态端点）
+     */
+    public Map<String, Map<String, Integer>> snapshot() {
+        Map<String, Map<String, Integer>> result = new LinkedHashMap<>();
+        semaphores.forEach((downstream, semaphore) -> {
+            int limit = limits.get(downstream);
+            int available = semaphore.availablePermits();
+            result.put(downstream, Map.of(
+                    "maxConcurrent", limit,
+                    "available", available,
+                    "inFlight", limit - available,
+                    "waiting", semaphore.getQueueLength()
+            ));
+        });
+        return result;
+    }
+
+    /**
+     * 调用许可
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
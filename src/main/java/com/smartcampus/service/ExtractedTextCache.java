@@ -0,0 +1,208 @@
+package com.smartcampus.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.smartcampus.entity.FileProcessTask;
+import com.smartcampus.entity.LearningFile;
+import com.smartcampus.repository.FileProcessTaskRepository;
+import com.smartcampus.utils.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 文件提取文本缓存 - 按文件内容 SHA-256 + 提取器版本作为键，同一份文件（不论谁上传）只解析一次
+ *
+ * 两级：进程内 Caffeine（按总字符数淘汰），file_process_tasks.extracted_text（跨实例、跨重启）。
+ * 数据库行的 task_id 为 "extract-{版本}-{哈希}"，提取器版本变化后旧行不再命中，自然重新解析。
+ * 同一键的并发请求合并为一次解析；解析失败或不完整（如 PDF 部分页面超时）的结果不缓存。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ExtractedTextCache {
+
+    /**
+     * LearningFile.metadata 中保存内容哈希的键（上传时写入）
+     */
+    public static final String CONTENT_HASH_KEY = "sha256";
+
+    private static final String TASK_ID_PREFIX = "extract-";
+
+    private final FileProcessingService fileProcessingService;
+    private final FileProcessTaskRepository fileProcessTaskRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${file.extract.cache.max-chars:20000000}")
+    private long maxChars;  // 进程内缓存总字符数上限
+
+    @Value("${file.extract.cache.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final SingleFlight<String, FileProcessingService.Extraction> inFlight = new SingleFlight<>();
+
+    // 缓存键 -> 提取文本
+    private Cache<String, String> texts;
+
+    // 上传早于哈希字段的旧文件：文件ID -> 现算的哈希，避免每次读取都重新计算
+    private Cache<Long, String> legacyHashes;
+
+    private Counter dbHits;
+    private Counter extractions;
+
+    @PostConstruct
+    public void init() {
+        texts = Caffeine.newBuilder()
+                .maximumWeight(maxChars)
+                .weigher((String key, String text) -> text.length())
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        // 命中/未命中/淘汰指标：/actuator/metrics/cache.gets?tag=cache:extracted-text
+        CaffeineCacheMetrics.monitor(meterRegistry, texts, "extracted-text");
+
+        legacyHashes = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .build();
+
+        dbHits = Counter.builder("file.extract.cache.db.hits").register(meterRegistry);
+        extractions = Counter.builder("file.extract.cache.extractions").register(meterRegistry);
+    }
+
+    /**
+     * 文件的提取文本；失败时与 FileProcessingService 一样返回以【开头的提示文字
+     */
+    public String getText(LearningFile file) {
+        return get(file).text();
+    }
+
+    /**
+     * 文件的提取结果及是否完整；不完整的结果（失败、部分页面未解析）不缓存，下次读取时重新解析
+     */
+    public FileProcessingService.Extraction get(LearningFile file) {
+        String hash;
+        try {
+            hash = contentHash(file);
+        } catch (IOException e) {
+            // 文件读不到时交给提取流程给出统一的错误提示
+            log.warn("计算文件哈希失败: fileId={}, {}", file.getId(), e.getMessage());
+            return fileProcessingService.extractByPath(file.getFilePath());
+        }
+
+        String key = FileProcessingService.EXTRACTOR_VERSION + "-" + hash;
+        String cached = texts.getIfPresent(key);
+        if (cached != null) {
+            return new FileProcessingService.Extraction(cached, true);
+        }
+
+        try {
+            return inFlight.execute(key, () -> load(key, file));
+        } catch (Exception e) {
+            log.error("读取提取文本失败: fileId={}", file.getId(), e);
+            return new FileProcessingService.Extraction("【文件解析失败: " + e.getMessage() + "】", false);
+        }
+    }
+
+    private FileProcessingService.Extraction load(String key, LearningFile file) {
+        String cached = texts.getIfPresent(key);
+        if (cached != null) {
+            return new FileProcessingService.Extraction(cached, true);
+        }
+
+        String taskId = TASK_ID_PREFIX + key;
+        Optional<FileProcessTask> stored = fileProcessTaskRepository.findById(taskId);
+        if (stored.isPresent() && stored.get().getExtractedText() != null) {
+            dbHits.increment();
+            String text = stored.get().getExtractedText();
+            texts.put(key, text);
+            return new FileProcessingService.Extraction(text, true);
+        }
+
+        long start = System.currentTimeMillis();
+        FileProcessingService.Extraction extraction = fileProcessingService.extractByPath(file.getFilePath());
+        extractions.increment();
+        if (!extraction.complete()) {
+            return extraction;
+        }
+
+        // PostgreSQL TEXT 不能包含 NUL 字符
+        String text = extraction.text().replace("\u0000", "");
+        texts.put(key, text);
+        persist(taskId, file, text, (int) (System.currentTimeMillis() - start));
+        return new FileProcessingService.Extraction(text, true);
+    }
+
+    private void persist(String taskId, LearningFile file, String text, int duration) {
+        try {
+            FileProcessTask task = new FileProcessTask();
+            task.setTaskId(taskId);
+            task.setUserId(String.valueOf(file.getUserId()));
+            task.setOriginalFilename(file.getOriginalName());
+            task.setFileType(file.getFileType());
+            task.setFilePath(file.getFilePath());
+            task.setExtractedText(text);
+            task.setStatus(FileProcessTask.TaskStatus.COMPLETED);
+            task.setProcessDuration(duration);
+            task.setUpdatedAt(LocalDateTime.now());
+            fileProcessTaskRepository.save(task);
+            log.info("提取文本已持久化: {}, 长度: {}", taskId, text.length());
+        } catch (Exception e) {
+            // 其他实例可能同时写入同一行；持久化失败只影响下次是否命中数据库
+            log.warn("提取文本持久化失败: {}, {}", taskId, e.getMessage());
+        }
+    }
+
+    /**
+     * 内容哈希：优先用上传时记录的值，旧文件现算（结果缓存）
+     */
+    private String contentHash(LearningFile file) throws IOException {
+        Map<String, Object> metadata = file.getMetadata();
+        if (metadata != null && metadata.get(CONTENT_HASH_KEY) instanceof String hash) {
+            return hash;
+        }
+        if (file.getId() != null) {
+            String hash = legacyHashes.getIfPresent(file.getId());
+            if (hash != null) {
+                return hash;
+            }
+        }
+
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(Path.of(file.getFilePath())), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        if (file.getId() != null) {
+            legacyHashes.put(file.getId(), hash);
+        }
+        return hash;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM 不支持 SHA-256", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.smartcampus.service;
+
+import com.smartcampus.entity.KnowledgeDocument;
+import com.smartcampus.entity.LearningFile;
+import com.smartcampus.repository.KnowledgeDocumentRepository;
+import com.smartcampus.utils.FlatVectorIndex;
+import com.smartcampus.utils.SingleFlight;
+import com.smartcampus.utils.TextChunker;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文件入库服务 - 提取文本、分块、批量向量化并写入向量存储
+ *
+ * 分块按文件内容哈希归属（见 VectorStoreService.fileNamespace），同一份文件不论上传几次只向量化一次；
+ * 同一内容的并发入库合并为一次。
+ *
+ * 分块先以 is_active = false 落库（启动加载和检索都看不到），全部写完后一条 UPDATE 置为有效，
+ * 再整体发布到向量索引；有效分块即入库完成的标记，中途失败或进程退出留下的无效分块在下次入库时清理。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FileIngestionService {
+
+    private static final int MAX_TITLE_LENGTH = 255;
+
+    private final ExtractedTextCache extractedTextCache;
+    private final KnowledgeDocumentRepository knowledgeDocumentRepository;
+    private final VectorStoreService vectorStoreService;
+    private final TextEmbedder textEmbedder;
+
+    @Value("${ai.embedding.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${ai.embedding.chunk-overlap:50}")
+    private int chunkOverlap;
+
+    private final SingleFlight<String, Integer> inFlight = new SingleFlight<>();
+
+    /**
+     * 文件入库，返回该内容的分块数
+     * 分块逐批向量化并落库，同一时刻只有一个批次的分块文本驻留内存
+     */
+    public int ingest(LearningFile file) throws Exception {
+        String namespace = VectorStoreService.fileNamespace(file);
+        return inFlight.execute(namespace, () -> ingest(file, namespace));
+    }
+
+    private int ingest(LearningFile file, String namespace) {
+        int existing = vectorStoreService.size(namespace);
+        if (existing == 0) {
+            // 其他实例可能已完成入库，从数据库加载有效分块
+            existing = vectorStoreService.loadNamespace(namespace);
+        }
+        if (existing > 0) {
+            log.info("相同内容已入库，复用分块: fileId={}, 分块数: {}", file.getId(), existing);
+            return existing;
+        }
+
+        long start = System.currentTimeMillis();
+        FileProcessingService.Extraction extraction = extractedTextCache.get(file);
+        String text = extraction.text();
+        if (!extraction.complete() || text.isBlank()) {
+            // 不完整的内容不入库：分块按内容哈希共享，入库后不会再重新生成
+            log.warn("文件内容不可用或不完整，跳过入库: fileId={}", file.getId());
+            return 0;
+        }
+
+        // 清理上次中断留下的（未生效的）分块
+        removeChunks(namespace);
+
+        TextChunker chunker = new TextChunker(new StringReader(text), chunkSize, chunkOverlap);
+        int batchSize = Math.max(1, textEmbedder.maxBatchSize());
+        List<TextChunker.Chunk> batch = new ArrayList<>(batchSize);
+        FlatVectorIndex staged = new FlatVectorIndex();
+        int total = 0;
+
+        try {
+            while (chunker.hasNext()) {
+                batch.add(chunker.next());
+                if (batch.size() == batchSize || !chunker.hasNext()) {
+                    total += writeBatch(file, namespace, batch, staged);
+                    batch.clear();
+                }
+            }
+            knowledgeDocumentRepository.activateBySource(VectorStoreService.LEARNING_FILE_SOURCE_TYPE, namespace);
+        } catch (RuntimeException e) {
+            removeChunks(namespace);
+            throw e;
+        }
+        vectorStoreService.publishNamespace(namespace, staged);
+
+        log.info("文件入库完成: fileId={}, 分块数: {}, 耗时: {} ms",
+                file.getId(), total, System.currentTimeMillis() - start);
+        return total;
+    }
+
+    private void removeChunks(String namespace) {
+        knowledgeDocumentRepository.deleteBySource(VectorStoreService.LEARNING_FILE_SOURCE_TYPE, namespace);
+        vectorStoreService.removeNamespace(namespace);
+    }
+
+    private int writeBatch(LearningFile file, String namespace, List<TextChunker.Chunk> batch,
+                           FlatVectorIndex staged) {
+        List<float[]> embeddings = textEmbedder.embed(batch.stream().map(TextChunker.Chunk::text).toList());
+
+        List<KnowledgeDocument> documents = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            TextChunker.Chunk chunk = batch.get(i);
+            KnowledgeDocument document = new KnowledgeDocument();
+            document.setTitle(title(file.getOriginalName(), chunk.index()));
+            document.setSourceType(VectorStoreService.LEARNING_FILE_SOURCE_TYPE);
+            document.setSourcePath(namespace);
+            document.setContent(chunk.text());
+            document.setVectorEmbedding(VectorStoreService.encodeEmbedding(embeddings.get(i)));
+            document.setEmbeddingModel(textEmbedder.modelName());
+            document.setCategory("学习文件");
+            document.setUploader(String.valueOf(file.getUserId()));
+            document.setIsActive(false);  // 全部写完后统一生效
+            documents.add(document);
+        }
+
+        List<KnowledgeDocument> saved = knowledgeDocumentRepository.saveAll(documents);
+        for (int i = 0; i < saved.size(); i++) {
+            staged.add(saved.get(i).getId(), embeddings.get(i));
+        }
+        return documents.size();
+    }
+
+    /**
+     * 分块标题 "文件名#序号"，文件名过长时截断，保证不超过 title 列的 varchar(255)
+     */
+    private static String title(String originalName, int index) {
+        String suffix = "#" + index;
+        String name = originalName != null ? originalName : "";
+        int maxName = MAX_TITLE_LENGTH - suffix.length();
+        if (name.length() > maxName) {
+            name = name.substring(0, maxName);
+        }
+        return name + suffix;
+    }
+}
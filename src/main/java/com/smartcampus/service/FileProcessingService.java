@@ -1,53 +1,76 @@
 package com.smartcampus.service;
 
+import com.smartcampus.service.extract.DocumentExtractor;
+import com.smartcampus.service.extract.DocumentSource;
+import com.smartcampus.service.extract.ExtractionSink;
+import com.smartcampus.service.extract.FormatSniffer;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.hwpf.HWPFDocument;
-import org.apache.poi.hwpf.extractor.WordExtractor;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xslf.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import net.sourceforge.tess4j.Tesseract;
-import net.sourceforge.tess4j.TesseractException;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * 文件文本提取（上传文件的存储见 FileStorageService）
+ *
+ * 各格式的提取由 DocumentExtractor 实现，按扩展名注册；文件内容与扩展名不符时以内容识别结果为准。
+ * 上传文件和已保存文件走同一条路径：在 aiTaskExecutor 上执行、统一超时、输出受总字符数上限约束。
+ */
 @Service
 @Slf4j
 public class FileProcessingService {
 
-    private final Path fileStorageLocation;
+    /**
+     * 提取器版本：修改任何格式的提取逻辑或输出格式后递增，ExtractedTextCache 中旧版本的结果随之失效
+     */
+    public static final String EXTRACTOR_VERSION = "v1";
 
-    public FileProcessingService() {
-        this.fileStorageLocation = Paths.get("/opt/smart-campus/uploads")
-                .toAbsolutePath().normalize();
+    /**
+     * 提取结果：文本，以及是否完整（部分页面解析失败或超时为 false，这样的结果不应缓存）
+     */
+    public record Extraction(String text, boolean complete) {
+    }
 
-        try {
-            Files.createDirectories(this.fileStorageLocation);
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp", "gif");
+    private static final String TRUNCATED_NOTE = "\n...(内容过长，已截断)";
+
+    private final ExecutorService aiTaskExecutor;
+    private final DownstreamLimiter downstreamLimiter;
+    private final Map<String, DocumentExtractor> extractors = new HashMap<>();
 
-            initTesseract();
+    @Value("${file.extract.max-chars:2000000}")
+    private long maxChars;
 
-        } catch (Exception ex) {
-            log.error("初始化失败", ex);
-            throw new RuntimeException("无法创建文件上传目录", ex);
+    @Value("${file.extract.timeout-seconds:150}")
+    private long timeoutSeconds;
+
+    public FileProcessingService(ExecutorService aiTaskExecutor, DownstreamLimiter downstreamLimiter,
+                                 List<DocumentExtractor> documentExtractors) {
+        this.aiTaskExecutor = aiTaskExecutor;
+        this.downstreamLimiter = downstreamLimiter;
+        for (DocumentExtractor extractor : documentExtractors) {
+            for (String extension : extractor.extensions()) {
+                DocumentExtractor existing = extractors.putIfAbsent(extension, extractor);
+                if (existing != null) {
+                    throw new IllegalStateException("扩展名 " + extension + " 重复注册: "
+                            + existing.getClass().getSimpleName() + ", " + extractor.getClass().getSimpleName());
+                }
+            }
         }
+        log.info("已注册文件格式: {}", extractors.keySet());
+
+        initTesseract();
     }
 
     /**
@@ -72,22 +95,8 @@ public class FileProcessingService {
      * 从 MultipartFile 提取文本（用于直接上传）
      */
     public String extractTextFromFile(MultipartFile file) {
-        String filename = file.getOriginalFilename();
-        String extension = getFileExtension(filename);
-
-        try {
-            return switch (extension.toLowerCase()) {
-                case "pdf" -> extractTextFromPdf(file);
-                case "docx" -> extractTextFromDocx(file);
-                case "doc" -> extractTextFromDoc(file);
-                case "txt" -> extractTextFromTxt(file);
-                case "xls", "xlsx" -> extractTextFromExcel(file);
-                case "pptx" -> extractTextFromPptx(file);
-                default -> "【不支持的文件格式: " + extension + "】";
-            };
-        } catch (Exception e) {
-            log.error("文件解析失败: {}", filename, e);
-            return "【文件解析失败: " + e.getMessage() + "】";
+        try (DocumentSource source = DocumentSource.of(file)) {
+            return extractText(source).text();
         }
     }
 
@@ -95,413 +104,130 @@ public class FileProcessingService {
      * 从已保存的文件路径提取文本内容
      */
     public String extractTextFromFileByPath(String filePath) {
+        return extractByPath(filePath).text();
+    }
+
+    /**
+     * 从已保存的文件路径提取，同时返回结果是否完整；提示文字（失败）的结果视为不完整
+     */
+    public Extraction extractByPath(String filePath) {
         File file = new File(filePath);
         log.info("开始解析文件: {}", filePath);
 
         if (!file.exists()) {
             log.error("文件不存在: {}", filePath);
-            return "【文件不存在】";
-        }
-
-        String filename = file.getName();
-        String extension = getFileExtension(filename);
-        long fileSizeKB = file.length() / 1024;
-        log.info("文件大小: {} KB, 格式: {}", fileSizeKB, extension);
-
-        try {
-            return switch (extension.toLowerCase()) {
-                case "pdf" -> extractTextFromPdfFile(file);
-                case "docx" -> extractTextFromDocxFile(file);
-                case "doc" -> extractTextFromDocFile(file);
-                case "txt" -> extractTextFromTxtFile(file);
-                case "xls", "xlsx" -> extractTextFromExcelFile(file);
-                case "pptx" -> extractTextFromPptxFile(file);
-                case "jpg", "jpeg", "png", "bmp", "gif" -> extractTextFromImageFile(file);
-                default -> "【不支持的文件格式: " + extension + "】";
-            };
-        } catch (Exception e) {
-            log.error("文件解析失败: {}", filename, e);
-            return "【文件解析失败: " + e.getMessage() + "】";
-        }
-    }
-
-    // ==================== PPTX 解析 ====================
-
-    private String extractTextFromPptx(MultipartFile file) {
-        try (InputStream is = file.getInputStream();
-             XMLSlideShow ppt = new XMLSlideShow(is)) {
-            StringBuilder text = new StringBuilder();
-            List<XSLFSlide> slides = ppt.getSlides();
-
-            for (int i = 0; i < slides.size(); i++) {
-                XSLFSlide slide = slides.get(i);
-                text.append("=== 第 ").append(i + 1).append(" 页 ===\n");
-
-                for (XSLFShape shape : slide.getShapes()) {
-                    if (shape instanceof XSLFTextShape) {
-                        text.append(((XSLFTextShape) shape).getText()).append("\n");
-                    }
-                }
-                text.append("\n");
-            }
-            return text.toString();
-        } catch (Exception e) {
-            log.error("PPTX解析失败", e);
-            return "【PPTX解析失败】";
-        }
-    }
-
-    private String extractTextFromPptxFile(File file) {
-        try (FileInputStream fis = new FileInputStream(file);
-             XMLSlideShow ppt = new XMLSlideShow(fis)) {
-            StringBuilder text = new StringBuilder();
-            List<XSLFSlide> slides = ppt.getSlides();
-
-            for (int i = 0; i < slides.size(); i++) {
-                XSLFSlide slide = slides.get(i);
-                text.append("=== 第 ").append(i + 1).append(" 页 ===\n");
-
-                for (XSLFShape shape : slide.getShapes()) {
-                    if (shape instanceof XSLFTextShape) {
-                        text.append(((XSLFTextShape) shape).getText()).append("\n");
-                    }
-                }
-                text.append("\n");
-            }
-            return text.toString();
-        } catch (Exception e) {
-            log.error("PPTX解析失败", e);
-            return "【PPTX解析失败】";
-        }
-    }
-
-    // ==================== Excel 解析 ====================
-
-    private String extractTextFromExcel(MultipartFile file) {
-        try (InputStream is = file.getInputStream()) {
-            Workbook workbook;
-            String filename = file.getOriginalFilename();
-
-            if (filename != null && filename.endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(is);
-            } else {
-                workbook = new org.apache.poi.hssf.usermodel.HSSFWorkbook(is);
-            }
-
-            StringBuilder text = new StringBuilder();
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                text.append("=== 工作表: ").append(sheet.getSheetName()).append(" ===\n");
-
-                for (Row row : sheet) {
-                    for (Cell cell : row) {
-                        switch (cell.getCellType()) {
-                            case STRING:
-                                text.append(cell.getStringCellValue()).append("\t");
-                                break;
-                            case NUMERIC:
-                                if (DateUtil.isCellDateFormatted(cell)) {
-                                    text.append(cell.getDateCellValue()).append("\t");
-                                } else {
-                                    text.append(cell.getNumericCellValue()).append("\t");
-                                }
-                                break;
-                            case BOOLEAN:
-                                text.append(cell.getBooleanCellValue()).append("\t");
-                                break;
-                            case FORMULA:
-                                try {
-                                    text.append(cell.getCellFormula()).append("\t");
-                                } catch (Exception e) {
-                                    text.append("公式\t");
-                                }
-                                break;
-                            default:
-                                text.append(" \t");
-                        }
-                    }
-                    text.append("\n");
-                }
-                text.append("\n");
-            }
-            workbook.close();
-            return text.toString();
-        } catch (Exception e) {
-            log.error("Excel解析失败", e);
-            return "【Excel解析失败: " + e.getMessage() + "】";
+            return new Extraction("【文件不存在】", false);
         }
-    }
-
-    private String extractTextFromExcelFile(File file) {
-        try (FileInputStream fis = new FileInputStream(file)) {
-            Workbook workbook;
-            String filename = file.getName();
-
-            if (filename.endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else {
-                workbook = new org.apache.poi.hssf.usermodel.HSSFWorkbook(fis);
-            }
-
-            StringBuilder text = new StringBuilder();
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                text.append("=== 工作表: ").append(sheet.getSheetName()).append(" ===\n");
 
-                for (Row row : sheet) {
-                    for (Cell cell : row) {
-                        switch (cell.getCellType()) {
-                            case STRING:
-                                text.append(cell.getStringCellValue()).append("\t");
-                                break;
-                            case NUMERIC:
-                                if (DateUtil.isCellDateFormatted(cell)) {
-                                    text.append(cell.getDateCellValue()).append("\t");
-                                } else {
-                                    text.append(cell.getNumericCellValue()).append("\t");
-                                }
-                                break;
-                            case BOOLEAN:
-                                text.append(cell.getBooleanCellValue()).append("\t");
-                                break;
-                            case FORMULA:
-                                try {
-                                    text.append(cell.getCellFormula()).append("\t");
-                                } catch (Exception e) {
-                                    text.append("公式\t");
-                                }
-                                break;
-                            default:
-                                text.append(" \t");
-                        }
-                    }
-                    text.append("\n");
-                }
-                text.append("\n");
-            }
-            workbook.close();
-            return text.toString();
-        } catch (Exception e) {
-            log.error("Excel解析失败", e);
-            return "【Excel解析失败: " + e.getMessage() + "】";
-        }
-    }
-
-    // ==================== DOC (旧版 Word) 解析 ====================
-
-    private String extractTextFromDoc(MultipartFile file) {
-        try (InputStream is = file.getInputStream();
-             HWPFDocument doc = new HWPFDocument(is);
-             WordExtractor extractor = new WordExtractor(doc)) {
-            return extractor.getText();
-        } catch (Exception e) {
-            log.error("DOC解析失败", e);
-            return "【DOC解析失败】";
+        try (DocumentSource source = DocumentSource.of(file)) {
+            return extractText(source);
         }
     }
 
-    private String extractTextFromDocFile(File file) {
-        try (FileInputStream fis = new FileInputStream(file);
-             HWPFDocument doc = new HWPFDocument(fis);
-             WordExtractor extractor = new WordExtractor(doc)) {
-            return extractor.getText();
-        } catch (Exception e) {
-            log.error("DOC解析失败", e);
-            return "【DOC解析失败】";
-        }
-    }
-
-    // ==================== 图片 OCR 解析 ====================
-
-    private String extractTextFromImage(MultipartFile file) {
-        return "【图片OCR功能已禁用，请上传PDF、Word、Excel、PPTX或TXT格式的文件】";
-    }
-
-    private String extractTextFromImageFile(File file) {
-        return "【图片OCR功能已禁用，请上传PDF、Word、Excel、PPTX或TXT格式的文件】";
+    /**
+     * 是否为提取失败时返回的提示文字
+     */
+    public static boolean isExtractionError(String text) {
+        return text.startsWith("【文件解析失败")
+                || text.startsWith("【文件不存在")
+                || text.startsWith("【不支持的文件格式")
+                || text.startsWith("【文件编码格式不支持")
+                || text.startsWith("【图片OCR功能已禁用");
     }
 
-    // ==================== 原有的 PDF、DOCX、TXT 等方法保持不变 ====================
+    /**
+     * 提取为字符串；失败时返回以【文件解析失败 / 【不支持的文件格式 开头的提示文字
+     */
+    private Extraction extractText(DocumentSource source) {
+        String extension = source.extension();
+        log.info("文件大小: {} KB, 格式: {}", source.size() / 1024, extension);
 
-    private String extractTextFromPdf(MultipartFile file) {
-        long start = System.currentTimeMillis();
-        try (PDDocument document = PDDocument.load(file.getInputStream())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            stripper.setSortByPosition(true);
-            String text = stripper.getText(document);
-            log.info("PDF解析完成，长度: {}，耗时: {} ms", text.length(), System.currentTimeMillis() - start);
-            return text;
-        } catch (Exception e) {
-            log.error("PDF解析失败", e);
-            return "【PDF解析失败: " + e.getMessage() + "】";
+        if (IMAGE_EXTENSIONS.contains(extension)) {
+            return failed("【图片OCR功能已禁用，请上传PDF、Word、Excel、PPTX或TXT格式的文件】");
         }
-    }
 
-    private String extractTextFromPdfFile(File file) {
         long start = System.currentTimeMillis();
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<String> future = executor.submit(() -> {
-            try (PDDocument document = PDDocument.load(file)) {
-                PDFTextStripper stripper = new PDFTextStripper();
-                stripper.setSortByPosition(true);
-                return stripper.getText(document);
-            }
+        StringWriter text = new StringWriter();
+        ExtractionSink sink = new ExtractionSink(text, maxChars);
+        Future<?> future = aiTaskExecutor.submit(() -> {
+            extract(source, sink);
+            return null;
         });
 
+        boolean complete = true;
         try {
-            String result = future.get(30, TimeUnit.SECONDS);
-            log.info("PDF解析完成，长度: {}，耗时: {} ms", result.length(), System.currentTimeMillis() - start);
-            return result;
+            future.get(timeoutSeconds, TimeUnit.SECONDS);
         } catch (TimeoutException e) {
             future.cancel(true);
-            log.error("PDF解析超时");
-            return "【PDF解析超时，文件可能过大或包含复杂内容】";
-        } catch (Exception e) {
-            log.error("PDF解析失败", e);
-            return "【PDF解析失败】";
-        } finally {
-            executor.shutdownNow();
+            sink.close();
+            log.error("文件解析超时: {}", source.name());
+            return failed("【文件解析失败: 解析超时，文件可能过大或包含复杂内容】");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            sink.close();
+            return failed("【文件解析失败: 解析被中断】");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UnsupportedFormatException) {
+                return failed("【不支持的文件格式: " + extension + "】");
+            }
+            if (cause instanceof ExtractionSink.IncompleteException) {
+                log.warn("{} 部分内容未能解析: {}", source.name(), cause.getMessage());
+                complete = false;
+            } else if (!(cause instanceof ExtractionSink.LimitReachedException)) {
+                log.error("文件解析失败: {}", source.name(), cause);
+                return failed("【文件解析失败: " + cause.getMessage() + "】");
+            }
         }
-    }
+        sink.close();
 
-    private String extractTextFromDocx(MultipartFile file) {
-        long start = System.currentTimeMillis();
-        try (XWPFDocument doc = new XWPFDocument(file.getInputStream())) {
-            XWPFWordExtractor extractor = new XWPFWordExtractor(doc);
-            String text = extractor.getText();
-            log.info("DOCX解析完成，长度: {}，耗时: {} ms", text.length(), System.currentTimeMillis() - start);
-            return text;
-        } catch (Exception e) {
-            log.error("DOCX解析失败", e);
-            return "【DOCX解析失败: " + e.getMessage() + "】";
-        }
+        String result = sink.limitReached() ? text + TRUNCATED_NOTE : text.toString();
+        log.info("{} 解析完成，长度: {}，耗时: {} ms",
+                source.name(), result.length(), System.currentTimeMillis() - start);
+        return new Extraction(result, complete);
     }
 
-    private String extractTextFromDocxFile(File file) {
-        log.info("开始解析 DOCX 文件，大小: {} KB", file.length() / 1024);
-        long start = System.currentTimeMillis();
-
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<String> future = executor.submit(() -> {
-            try (FileInputStream fis = new FileInputStream(file);
-                 XWPFDocument doc = new XWPFDocument(fis)) {
-
-                log.info("XWPFDocument 加载完成，耗时: {} ms", System.currentTimeMillis() - start);
-
-                StringBuilder text = new StringBuilder();
-                int paragraphCount = 0;
-
-                List<XWPFParagraph> paragraphs = doc.getParagraphs();
-                for (XWPFParagraph para : paragraphs) {
-                    String paraText = para.getText();
-                    if (paraText != null && !paraText.trim().isEmpty()) {
-                        text.append(paraText).append("\n");
-                        paragraphCount++;
-                    }
-
-                    if (paragraphCount > 1000) {
-                        log.warn("段落数超过1000，停止解析");
-                        break;
-                    }
-                }
-
-                if (!text.isEmpty()) {
-                    log.info("段落提取完成，共 {} 段，长度: {}，耗时: {} ms",
-                            paragraphCount, text.length(), System.currentTimeMillis() - start);
-                    return text.toString();
-                }
-
-                log.warn("段落提取为空，尝试完整提取");
-                XWPFWordExtractor extractor = new XWPFWordExtractor(doc);
-                String fullText = extractor.getText();
-
-                if (fullText != null && !fullText.isEmpty()) {
-                    log.info("完整提取完成，长度: {}，耗时: {} ms",
-                            fullText.length(), System.currentTimeMillis() - start);
-                    return fullText;
-                }
-
-                return "【文档内容为空】";
-
-            } catch (Exception e) {
-                log.error("DOCX解析异常", e);
-                return "【DOCX解析失败】";
-            }
-        });
-
-        try {
-            return future.get(15, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-            future.cancel(true);
-            log.error("DOCX解析超时");
-            return "【DOCX解析超时，请尝试使用纯文本格式】";
-        } catch (Exception e) {
-            log.error("DOCX解析异常", e);
-            return "【DOCX解析异常】";
-        } finally {
-            executor.shutdownNow();
-        }
+    private static Extraction failed(String message) {
+        return new Extraction(message, false);
     }
 
-    private String extractTextFromTxt(MultipartFile file) {
-        String[] encodings = {"UTF-8", "GBK", "GB2312", "GB18030", "ISO-8859-1"};
-
-        try {
-            byte[] bytes = file.getBytes();
-            for (String encoding : encodings) {
-                try {
-                    String content = new String(bytes, Charset.forName(encoding));
-                } catch (Exception e) {
-                }
-            }
-            return "【文件编码格式不支持，请转换为 UTF-8 格式后重试】";
-        } catch (IOException e) {
-            log.error("TXT解析失败", e);
-            return "【TXT解析失败】";
+    /**
+     * 提取文本写入 out（在调用线程上执行）；除自行控制并发的处理器外，提取期间持有一个 EXTRACTION 许可
+     */
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        DocumentExtractor extractor = resolve(source);
+        if (extractor == null) {
+            throw new UnsupportedFormatException(source.extension());
+        }
+        if (extractor.selfLimited()) {
+            extractor.extract(source, out);
+            return;
+        }
+        try (DownstreamLimiter.Permit permit = downstreamLimiter.acquire(DownstreamLimiter.EXTRACTION)) {
+            extractor.extract(source, out);
         }
     }
 
-    private String extractTextFromTxtFile(File file) {
-        // 按优先级尝试多种编码
-        String[] encodings = {"UTF-8", "GBK", "GB2312", "GB18030", "ISO-8859-1"};
-
-        for (String encoding : encodings) {
-            try {
-                byte[] bytes = Files.readAllBytes(file.toPath());
-                String content = new String(bytes, Charset.forName(encoding));
-                log.info("成功使用编码 {} 解析文件: {}", encoding, file.getName());
-                return content;
-
-            } catch (UnsupportedEncodingException e) {
-                log.warn("不支持的编码: {}", encoding);
-            } catch (Exception e) {
-                log.debug("使用编码 {} 解析失败: {}", encoding, e.getMessage());
-            }
+    /**
+     * 能识别内容格式且有对应处理器时按内容选，否则按扩展名选
+     */
+    private DocumentExtractor resolve(DocumentSource source) throws IOException {
+        String extension = source.extension();
+        String detected = FormatSniffer.detect(source);
+        if (detected != null && !detected.equals(extension) && extractors.containsKey(detected)) {
+            log.warn("文件内容与扩展名不符: {}，按 {} 解析", source.name(), detected);
+            return extractors.get(detected);
         }
-
-        log.error("无法解析文件，尝试了所有编码: {}", file.getName());
-        return "【文件编码格式不支持，请转换为 UTF-8 格式后重试】";
+        return extractors.get(extension);
     }
 
     /**
-     * 存储文件到服务器
+     * 没有处理该格式的 DocumentExtractor
      */
-    public String storeFile(MultipartFile file, String taskId) {
-        String filename = taskId + "_" + file.getOriginalFilename();
-
-        try {
-            if (filename.contains("..")) {
-                throw new RuntimeException("文件名包含非法路径序列: " + filename);
-            }
-
-            Path targetLocation = this.fileStorageLocation.resolve(filename);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-            log.info("文件保存成功: {}, 大小: {} KB", filename, file.getSize() / 1024);
-
-            return targetLocation.toString();
-        } catch (IOException ex) {
-            log.error("文件存储失败: {}", filename, ex);
-            throw new RuntimeException("无法存储文件: " + filename, ex);
+    public static class UnsupportedFormatException extends IOException {
+        public UnsupportedFormatException(String extension) {
+            super("不支持的文件格式: " + extension);
         }
     }
 
@@ -519,14 +245,7 @@ public class FileProcessingService {
      * 检查是否支持的文件类型
      */
     public boolean isSupportedFileType(String filename) {
-        String[] supported = {"pdf", "docx", "doc", "txt", "xls", "xlsx", "pptx", "jpg", "jpeg", "png", "bmp", "gif"};
         String extension = getFileExtension(filename).toLowerCase();
-
-        for (String type : supported) {
-            if (type.equals(extension)) {
-                return true;
-            }
-        }
-        return false;
+        return extractors.containsKey(extension) || IMAGE_EXTENSIONS.contains(extension);
     }
 }
\ No newline at end of file
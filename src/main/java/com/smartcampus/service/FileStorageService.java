@@ -0,0 +1,229 @@
+package com.smartcampus.service;
+
+import com.smartcampus.repository.LearningFileRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 上传文件存储 - 按内容 SHA-256 寻址，相同内容只存一份
+ *
+ * 布局：{root}/blobs/{哈希前2位}/{哈希3-4位}/{哈希}.{扩展名}，写入先落到 {root}/.tmp，
+ * 计算出哈希后原子改名到目标位置；目标已存在时丢弃临时文件。
+ * 引用计数即 learning_files 中 file_path 指向该文件的行数，计数归零时 release() 删除文件；
+ * 记录写入失败时调用 discard()，本次新建且未被其他上传复用的文件立即删除。
+ * 同一哈希的操作用分段 ReentrantLock 互斥（加锁期间有文件 IO，不用 synchronized 以免虚拟线程钉住载体线程）。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FileStorageService {
+
+    /**
+     * 存储结果：文件路径、内容哈希、字节数、是否复用了已有文件、存储完成时文件的修改时间
+     */
+    public record StoredFile(Path path, String sha256, long size, boolean deduplicated, FileTime modified) {
+    }
+
+    // 复用已有文件与写入数据库行之间的窗口；窗口内的文件即使引用数为 0 也不删除
+    private static final Duration RELEASE_GRACE = Duration.ofMinutes(1);
+    private static final int LOCK_STRIPES = 64;
+
+    private final LearningFileRepository learningFileRepository;
+
+    @Value("${file.upload.storage.location:/opt/smart-campus/uploads}")
+    private String storageLocation;
+
+    private Path blobRoot;
+    private Path tempRoot;
+
+    // 同一哈希的存储与释放互斥（按哈希分段加锁）
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    @PostConstruct
+    public void init() {
+        Path root = Paths.get(storageLocation).toAbsolutePath().normalize();
+        blobRoot = root.resolve("blobs");
+        tempRoot = root.resolve(".tmp");
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(blobRoot);
+            Files.createDirectories(tempRoot);
+        } catch (IOException e) {
+            throw new RuntimeException("无法创建文件上传目录: " + root, e);
+        }
+        log.info("上传文件存储目录: {}", root);
+    }
+
+    /**
+     * 保存上传文件：边写边算哈希，写入由 FileChannel.transferFrom 完成，无需轮询文件大小
+     */
+    public StoredFile store(MultipartFile file) throws IOException {
+        String extension = extensionOf(file.getOriginalFilename());
+        MessageDigest digest = ExtractedTextCache.newDigest();
+        Path temp = Files.createTempFile(tempRoot, "upload-", ".part");
+
+        try {
+            long size;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+                 ReadableByteChannel source = Channels.newChannel(in);
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                size = transfer(source, target);
+                // 落盘后再对外可见，后续解析读到的一定是完整文件
+                target.force(false);
+            }
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            Path blob = blobPath(sha256, extension);
+
+            ReentrantLock lock = lockFor(sha256);
+            lock.lock();
+            try {
+                if (Files.exists(blob)) {
+                    // 刷新修改时间，避免在新记录入库前被并发的 release()/discard() 删除
+                    FileTime now = FileTime.from(Instant.now());
+                    Files.setLastModifiedTime(blob, now);
+                    Files.delete(temp);
+                    log.info("文件内容已存在，复用: {}, 大小: {} KB", blob.getFileName(), size / 1024);
+                    return new StoredFile(blob, sha256, size, true, now);
+                }
+                Files.createDirectories(blob.getParent());
+                Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                FileTime modified = Files.getLastModifiedTime(blob);
+                log.info("文件保存成功: {}, 大小: {} KB", blob.getFileName(), size / 1024);
+                return new StoredFile(blob, sha256, size, false, modified);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 撤销一次 store()：对应的 learning_files 行没能写入时调用
+     *
+     * 本次新建的文件若没有引用、也没有被并发上传复用过（修改时间未被刷新），立即删除；
+     * 其余情况按 release() 处理。
+     */
+    public void discard(StoredFile stored) {
+        if (stored.deduplicated()) {
+            release(stored.path());
+            return;
+        }
+
+        Path path = stored.path();
+        ReentrantLock lock = lockFor(stored.sha256());
+        lock.lock();
+        try {
+            if (!Files.exists(path) || learningFileRepository.countByFilePath(path.toString()) > 0) {
+                return;
+            }
+            if (!Files.getLastModifiedTime(path).equals(stored.modified())) {
+                // 其他上传已复用该文件，其记录可能尚未写入，交给宽限期判断
+                deleteIfUnused(path);
+                return;
+            }
+            Files.delete(path);
+            log.info("文件记录未写入，删除新存文件: {}", path.getFileName());
+        } catch (IOException e) {
+            log.warn("删除未使用文件失败: {}, {}", path, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放一次引用：调用前应已删除（或未能写入）对应的 learning_files 行；没有其他引用时删除文件
+     */
+    public void release(Path path) {
+        if (path == null || !path.toAbsolutePath().normalize().startsWith(blobRoot)) {
+            return;  // 旧版按上传名存放的文件不参与引用计数
+        }
+        String name = path.getFileName().toString();
+        int dot = name.indexOf('.');
+        String sha256 = dot < 0 ? name : name.substring(0, dot);
+
+        ReentrantLock lock = lockFor(sha256);
+        lock.lock();
+        try {
+            if (learningFileRepository.countByFilePath(path.toString()) > 0 || !Files.exists(path)) {
+                return;
+            }
+            deleteIfUnused(path);
+        } catch (IOException e) {
+            log.warn("删除无引用文件失败: {}, {}", path, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除无引用文件，最近被复用过（宽限期内）的除外；调用方持有该哈希的锁
+     */
+    private void deleteIfUnused(Path path) throws IOException {
+        Instant modified = Files.getLastModifiedTime(path).toInstant();
+        if (modified.isAfter(Instant.now().minus(RELEASE_GRACE))) {
+            return;
+        }
+        Files.delete(path);
+        log.info("文件已无引用，删除: {}", path.getFileName());
+    }
+
+    private long transfer(ReadableByteChannel source, FileChannel target) throws IOException {
+        long position = 0;
+        long transferred;
+        // 源不是 FileChannel 时 JDK 经内部缓冲区搬运，一次调用通常读到流末尾；返回部分长度时继续，直到返回 0
+        while ((transferred = target.transferFrom(source, position, Long.MAX_VALUE - position)) > 0) {
+            position += transferred;
+        }
+        return position;
+    }
+
+    private Path blobPath(String sha256, String extension) {
+        String name = extension.isEmpty() ? sha256 : sha256 + "." + extension;
+        return blobRoot.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(name);
+    }
+
+    private ReentrantLock lockFor(String sha256) {
+        return locks[Math.floorMod(sha256.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * 小写扩展名；只保留字母数字，防止路径注入
+     */
+    private static String extensionOf(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String extension = filename.substring(dot + 1).toLowerCase();
+        return extension.matches("[a-z0-9]{1,10}") ? extension : "";
+    }
+}
@@ -7,7 +7,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.List;
@@ -23,8 +22,9 @@ import java.util.concurrent.ConcurrentHashMap;
 public class FileSummaryService {
 
     private final LearningFileRepository learningFileRepository;
-    private final FileProcessingService fileProcessingService;
+    private final ExtractedTextCache extractedTextCache;
     private final QianWenService qianWenService;
+    private final TokenCounter tokenCounter;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${ai.rag.chunk-size:500}")
@@ -33,6 +33,9 @@ public class FileSummaryService {
     @Value("${ai.rag.top-k:3}")
     private int topK;
 
+    @Value("${ai.context.summary-input-tokens:2000}")
+    private int summaryInputTokens;  // 生成摘要时送入的文件内容 token 上限
+
     // 缓存文件摘要，避免重复生成
     private final Map<Long, String> summaryCache = new ConcurrentHashMap<>();
 
@@ -45,27 +48,29 @@ public class FileSummaryService {
         // ✅ 修正：使用 ifPresent 而不是先获取再判断
         learningFileRepository.findById(fileId).ifPresent(file -> {
             try {
-                // 1. 提取文件内容
-                String fileContent = fileProcessingService.extractTextFromFileByPath(file.getFilePath());
+                // 1. 提取文件内容（同一内容的文件只解析一次）
+                String fileContent = extractedTextCache.getText(file);
 
-                if (fileContent == null || fileContent.isEmpty()) {
+                if (fileContent == null || fileContent.isEmpty()
+                        || FileProcessingService.isExtractionError(fileContent)) {
                     log.warn("文件内容为空，无法生成摘要: {}", fileId);
                     file.setSummary("【文件内容为空】");
                     learningFileRepository.save(file);
                     return;
                 }
 
-                // 2. 如果内容太长，取前部分内容（避免token超限）
-                String truncatedContent = fileContent.length() > 3000 ?
-                        fileContent.substring(0, 3000) + "..." : fileContent;
+                // 2. 如果内容太长，按 token 数取前部分内容（避免token超限）
+                String truncatedContent = tokenCounter.truncate(fileContent, summaryInputTokens);
+                if (truncatedContent.length() < fileContent.length()) {
+                    truncatedContent += "...";
+                }
 
                 // 3. 构建摘要生成提示词
                 String prompt = buildSummaryPrompt(file.getOriginalName(), truncatedContent);
 
                 // 4. 调用AI生成摘要
-                Mono<String> summaryMono = qianWenService.askQuestion(prompt, List.of(), "qwen-max");
-
-                String summary = summaryMono.block(Duration.ofSeconds(60));
+                String summary = qianWenService.askQuestionBlocking(prompt, List.of(),
+                        ModelRouter.Task.FILE_SUMMARY, Duration.ofSeconds(60));
 
                 if (summary != null && !summary.isEmpty()) {
                     // 5. 保存摘要
@@ -0,0 +1,198 @@
+package com.smartcampus.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型路由 - 按任务类型和提示长度选择模型档位
+ *
+ * 档位：fast / balanced / max，分别对应 ai.routing.models.* 配置的模型；
+ * 每类任务的默认档位见 {@link Task}，可用 ai.routing.tasks.&lt;任务&gt; 覆盖。
+ * 提示超过 escalate-tokens 时升一档；某模型最近的流式首包延迟（指数移动平均）超过 first-token-slo-ms 时，
+ * 非对话任务在 slo-window-seconds 内降一档（slo-downgrade 开启时）。关闭路由时全部使用 max 档。
+ * 降档信号只用首包延迟：整次调用耗时主要取决于回答长度，不反映上游是否健康；
+ * 只有非流式调用的模型没有首包样本，不会因此降档。
+ *
+ * 指标：ai.model.latency（整次调用）、ai.model.first-token（流式首包），按模型和任务分组，
+ * 带百分位直方图和 SLO 边界；ai.model.tokens 按模型记录实际 token 用量，用于估算费用。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelRouter {
+
+    public enum Tier {
+        FAST, BALANCED, MAX
+    }
+
+    /**
+     * 调用方任务类型及默认档位
+     */
+    public enum Task {
+        CHAT("chat", Tier.MAX),
+        RAG("rag", Tier.MAX),
+        STUDY_PLAN("study-plan", Tier.BALANCED),
+        REVIEW_ADVICE("review-advice", Tier.FAST),
+        STUDY_SUGGESTION("study-suggestion", Tier.FAST),
+        FILE_SUMMARY("file-summary", Tier.FAST),
+        SESSION_SUMMARY("session-summary", Tier.FAST);
+
+        private final String key;
+        private final Tier defaultTier;
+
+        Task(String key, Tier defaultTier) {
+            this.key = key;
+            this.defaultTier = defaultTier;
+        }
+
+        public String key() {
+            return key;
+        }
+    }
+
+    // 指数移动平均的权重
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final MeterRegistry meterRegistry;
+    private final Environment environment;
+
+    @Value("${ai.routing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.routing.models.fast:qwen-turbo}")
+    private String fastModel;
+
+    @Value("${ai.routing.models.balanced:qwen-plus}")
+    private String balancedModel;
+
+    @Value("${ai.routing.models.max:qwen-max}")
+    private String maxModel;
+
+    @Value("${ai.routing.escalate-tokens:4000}")
+    private int escalateTokens;
+
+    @Value("${ai.routing.latency-slo-ms:10000}")
+    private long latencySloMs;      // 整次调用计时器的 SLO 边界（仅用于指标）
+
+    @Value("${ai.routing.first-token-slo-ms:3000}")
+    private long firstTokenSloMs;   // 首包延迟 SLO，超过时降档
+
+    @Value("${ai.routing.slo-downgrade:true}")
+    private boolean sloDowngrade;
+
+    @Value("${ai.routing.slo-window-seconds:60}")
+    private long sloWindowSeconds;  // 最近延迟超过该时长未更新则不再据此降档
+
+    private final Map<Task, Tier> taskTiers = new ConcurrentHashMap<>();
+
+    /**
+     * 最近首包延迟（毫秒，指数移动平均）及更新时间
+     */
+    private record RecentLatency(double millis, long updatedAtNanos) {
+    }
+
+    // 模型 -> 最近首包延迟
+    private final Map<String, RecentLatency> recentFirstToken = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (Task task : Task.values()) {
+            String configured = environment.getProperty("ai.routing.tasks." + task.key());
+            Tier tier = task.defaultTier;
+            if (configured != null && !configured.isBlank()) {
+                try {
+                    tier = Tier.valueOf(configured.trim().toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    log.warn("模型档位配置无效，使用默认值: ai.routing.tasks.{}={}", task.key(), configured);
+                }
+            }
+            taskTiers.put(task, tier);
+        }
+        log.info("模型路由{}，档位: {}", enabled ? "已启用" : "已关闭", taskTiers);
+    }
+
+    /**
+     * 选择模型
+     *
+     * @param promptTokens 提示 token 数
+     */
+    public String route(Task task, int promptTokens) {
+        if (!enabled) {
+            return maxModel;
+        }
+        Tier tier = taskTiers.getOrDefault(task, task.defaultTier);
+        if (promptTokens > escalateTokens && tier != Tier.MAX) {
+            tier = Tier.values()[tier.ordinal() + 1];
+        } else if (sloDowngrade && task != Task.CHAT && tier != Tier.FAST && isOverSlo(modelOf(tier))) {
+            tier = Tier.values()[tier.ordinal() - 1];
+        }
+        return modelOf(tier);
+    }
+
+    /**
+     * 记录整次调用延迟（只进指标，不参与路由）
+     */
+    public void recordLatency(String model, String task, long nanos) {
+        latencyTimer("ai.model.latency", model, task, latencySloMs).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录流式调用首包延迟，同时更新该模型的降档信号
+     */
+    public void recordFirstToken(String model, String task, long nanos) {
+        latencyTimer("ai.model.first-token", model, task, firstTokenSloMs).record(nanos, TimeUnit.NANOSECONDS);
+        double millis = nanos / 1_000_000.0;
+        long now = System.nanoTime();
+        recentFirstToken.merge(model, new RecentLatency(millis, now), (old, latest) ->
+                new RecentLatency(old.millis() + EWMA_ALPHA * (millis - old.millis()), now));
+    }
+
+    /**
+     * 记录接口返回的实际 token 用量
+     */
+    public void recordUsage(String model, int promptTokens, int completionTokens) {
+        Counter.builder("ai.model.tokens").tag("model", model).tag("type", "prompt")
+                .register(meterRegistry).increment(promptTokens);
+        Counter.builder("ai.model.tokens").tag("model", model).tag("type", "completion")
+                .register(meterRegistry).increment(completionTokens);
+    }
+
+    private Timer latencyTimer(String name, String model, String task, long sloMs) {
+        // Micrometer 按名称和标签复用已注册的计时器
+        return Timer.builder(name)
+                .tag("model", model)
+                .tag("task", task)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMillis(sloMs))
+                .register(meterRegistry);
+    }
+
+    private boolean isOverSlo(String model) {
+        RecentLatency latency = recentFirstToken.get(model);
+        // 降档后该模型不再有新样本，过了窗口期重新尝试
+        return latency != null
+                && System.nanoTime() - latency.updatedAtNanos() < TimeUnit.SECONDS.toNanos(sloWindowSeconds)
+                && latency.millis() > firstTokenSloMs;
+    }
+
+    private String modelOf(Tier tier) {
+        return switch (tier) {
+            case FAST -> fastModel;
+            case BALANCED -> balancedModel;
+            case MAX -> maxModel;
+        };
+    }
+}
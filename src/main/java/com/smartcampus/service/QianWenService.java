@@ -1,18 +1,31 @@
 package com.smartcampus.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcampus.entity.QaHistory;
 import com.smartcampus.repository.AiConversationRepository;
+import com.smartcampus.repository.QaHistoryRepository;
+import com.smartcampus.utils.SseDeltaDecoder;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 @Slf4j
@@ -22,29 +35,106 @@ public class QianWenService {
     @Getter
     private final AiConversationRepository aiConversationRepository;
     private final ObjectMapper objectMapper;
+    private final DashScopeGuard dashScopeGuard;
+    private final AiResponseCache responseCache;
+    private final QaHistoryRepository qaHistoryRepository;
+    private final ModelRouter modelRouter;
+    private final TokenCounter tokenCounter;
 
-    public QianWenService(AiConversationRepository aiConversationRepository) {
+    // 非流式调用的采样参数（参与响应缓存键计算）
+    private static final Map<String, Object> SAMPLING_PARAMS = Map.of(
+            "temperature", 0.3,
+            "top_p", 0.8,
+            "max_tokens", 2000
+    );
+    private static final String MALFORMED_RESPONSE = "AI服务响应格式异常";
+    private static final String PARSE_FAILED = "解析响应失败";
+    private static final String DEFAULT_MODEL = "qwen-max";
+    // 调用方直接指定模型（未经路由）时的任务标签
+    private static final String DIRECT_TASK = "direct";
+    // 非流式调用的整体超时
+    private static final Duration CALL_TIMEOUT = Duration.ofSeconds(90);
+
+    @Value("${ai.qianwen.stream.first-token-timeout-seconds:60}")
+    private long firstTokenTimeoutSeconds;  // 流式调用等待首个分块的上限
+
+    @Value("${ai.qianwen.stream.idle-timeout-seconds:30}")
+    private long idleTimeoutSeconds;        // 流式调用两个分块之间的最长间隔
+
+    public QianWenService(AiConversationRepository aiConversationRepository, DashScopeGuard dashScopeGuard,
+                          AiResponseCache responseCache,
+                          QaHistoryRepository qaHistoryRepository, ModelRouter modelRouter,
+                          TokenCounter tokenCounter,
+                          @Value("${ai.qianwen.api-key:}") String apiKey,
+                          @Value("${ai.qianwen.base-url:https://dashscope.aliyuncs.com/compatible-mode/v1}")
+                          String baseUrl) {
         this.aiConversationRepository = aiConversationRepository;
+        this.dashScopeGuard = dashScopeGuard;
+        this.responseCache = responseCache;
+        this.qaHistoryRepository = qaHistoryRepository;
+        this.modelRouter = modelRouter;
+        this.tokenCounter = tokenCounter;
         this.objectMapper = new ObjectMapper();
 
-        String apiKey = System.getenv("AI_QIANWEN_API_KEY");
+        // 生产环境 ai.qianwen.api-key 来自 AI_QIANWEN_API_KEY；stub 配置下指向内置桩服务，不需要真实密钥
         if (apiKey == null || apiKey.isEmpty()) {
-            log.error("AI_QIANWEN_API_KEY 环境变量未设置");
+            log.error("ai.qianwen.api-key 未配置（环境变量 AI_QIANWEN_API_KEY）");
             throw new RuntimeException("AI_QIANWEN_API_KEY 环境变量未设置");
         }
+        log.info("通义千问接口地址: {}", baseUrl);
 
         this.webClient = WebClient.builder()
-                .baseUrl("https://dashscope.aliyuncs.com/compatible-mode/v1")
+                .baseUrl(baseUrl)
                 .defaultHeader("Authorization", "Bearer " + apiKey)
                 .build();
     }
 
     /**
-     * 带上下文的流式调用 - 直接接收已构建好的消息列表
+     * 带上下文的流式调用 - 返回类型化增量事件（文本、结束原因、用量、[DONE]）
+     */
+    public Flux<SseDeltaDecoder.Delta> streamChat(List<Map<String, String>> messages, String model) {
+        String modelName = model != null ? model : DEFAULT_MODEL;
+        log.info("🤖 调用通义千问，消息数量: {}, 模型: {}", messages.size(), modelName);
+        return instrumentStream(callAiApi(messages, modelName), modelName, DIRECT_TASK);
+    }
+
+    /**
+     * 带上下文的流式调用 - 按任务类型和提示长度路由模型
+     */
+    public Flux<SseDeltaDecoder.Delta> streamChat(List<Map<String, String>> messages, ModelRouter.Task task) {
+        String model = modelRouter.route(task, tokenCounter.countMessages(messages));
+        log.info("🤖 调用通义千问，消息数量: {}, 任务: {}, 模型: {}", messages.size(), task.key(), model);
+        return instrumentStream(callAiApi(messages, model), model, task.key());
+    }
+
+    /**
+     * 记录流式调用的首包延迟、整体延迟和实际用量
+     */
+    private Flux<SseDeltaDecoder.Delta> instrumentStream(Flux<SseDeltaDecoder.Delta> stream, String model, String task) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return stream
+                    .doOnNext(delta -> {
+                        if (first.compareAndSet(true, false)) {
+                            modelRouter.recordFirstToken(model, task, System.nanoTime() - start);
+                        }
+                        if (delta.usage() != null) {
+                            modelRouter.recordUsage(model, delta.usage().promptTokens(),
+                                    delta.usage().completionTokens());
+                        }
+                    })
+                    .doOnComplete(() -> modelRouter.recordLatency(model, task, System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * 带上下文的流式调用 - 只返回文本增量
      */
     public Flux<String> askQuestionWithContext(List<Map<String, String>> messages, String model) {
-        log.info("🤖 调用通义千问，消息数量: {}", messages.size());
-        return callAiApi(messages, model);
+        return streamChat(messages, model)
+                .filter(SseDeltaDecoder.Delta::hasContent)
+                .map(SseDeltaDecoder.Delta::content);
     }
 
     // 保留旧方法，标记为废弃
@@ -58,7 +148,7 @@ public class QianWenService {
         List<Map<String, String>> messages = List.of(
                 Map.of("role", "user", "content", question)
         );
-        return callAiApi(messages, model);
+        return askQuestionWithContext(messages, model);
     }
 
     @Deprecated
@@ -72,81 +162,284 @@ public class QianWenService {
 
     /**
      * 调用通义千问API（流式）
+     * 响应体按字节块读取，由 SseDeltaDecoder 增量解码，不经过字符串和 JSON 树
      */
-    private Flux<String> callAiApi(List<Map<String, String>> messages, String model) {
+    private Flux<SseDeltaDecoder.Delta> callAiApi(List<Map<String, String>> messages, String model) {
         Map<String, Object> requestBody = Map.of(
-                "model", model != null ? model : "qwen-max",
+                "model", model,
                 "messages", messages,
                 "temperature", 0.3,
                 "top_p", 0.8,
                 "max_tokens", 2000,
                 "stream", true,
-                "incremental_output", true
+                "incremental_output", true,
+                // 最后一个分块附带本次调用的实际 token 用量
+                "stream_options", Map.of("include_usage", true)
         );
 
-        return webClient.post()
+        // 每次尝试单独经过并发上限和熔断器；超时放在保护范围内，才能计入失败。
+        // 只限制首个分块的等待时间和分块之间的间隔，不限制总时长：持续输出的长回答是健康的调用
+        Duration firstTokenTimeout = Duration.ofSeconds(firstTokenTimeoutSeconds);
+        Duration idleTimeout = Duration.ofSeconds(idleTimeoutSeconds);
+        Flux<SseDeltaDecoder.Delta> attempt = dashScopeGuard.protectStream(webClient.post()
                 .uri("/chat/completions")
                 .bodyValue(requestBody)
                 .retrieve()
-                .bodyToFlux(String.class)
-                .timeout(Duration.ofSeconds(90))
-                .doOnError(e -> log.error("调用通义千问失败", e))
-                .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))
-                        .maxBackoff(Duration.ofSeconds(5))
-                        .filter(throwable -> throwable.getMessage() != null &&
-                                (throwable.getMessage().contains("reset") ||
-                                        throwable.getMessage().contains("timeout")))
-                        .doBeforeRetry(retrySignal ->
-                                log.info("第 {} 次重试, 原因: {}",
-                                        retrySignal.totalRetries() + 1,
-                                        retrySignal.failure().getMessage()))
-                );
+                .bodyToFlux(DataBuffer.class)
+                .transform(QianWenService::decodeDeltas)
+                .timeout(Mono.delay(firstTokenTimeout), delta -> Mono.delay(idleTimeout)));
+
+        return Flux.defer(() -> {
+            // 已向下游输出过内容时不重试，避免重复文本
+            AtomicBoolean emitted = new AtomicBoolean();
+            return attempt
+                    .doOnNext(delta -> emitted.set(true))
+                    .doOnError(e -> log.error("调用通义千问失败: {}", e.toString()))
+                    .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))
+                            .maxBackoff(Duration.ofSeconds(5))
+                            .filter(throwable -> !emitted.get() && isRetryable(throwable))
+                            .doBeforeRetry(retrySignal ->
+                                    log.info("第 {} 次重试, 原因: {}",
+                                            retrySignal.totalRetries() + 1,
+                                            retrySignal.failure().toString())));
+        });
+    }
+
+    /**
+     * 可重试的错误：连接失败（请求未得到响应）或网关类 5xx；
+     * 超时、限流、熔断拒绝都不重试，避免放大过载
+     */
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientRequestException) {
+            return true;
+        }
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 502 || status == 503 || status == 504;
+        }
+        return false;
     }
 
     /**
-     * 非流式调用 - 保留用于兼容性和测试
+     * 字节流 -> 增量事件；每次订阅（含重试）使用新的解码器，数据块解码后立即释放
+     */
+    private static Flux<SseDeltaDecoder.Delta> decodeDeltas(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            SseDeltaDecoder decoder = new SseDeltaDecoder();
+            return body.concatMapIterable(buffer -> {
+                try {
+                    return decoder.decode(buffer);
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            }).concatWith(Flux.defer(() -> Flux.fromIterable(decoder.flush())));
+        });
+    }
+
+    /**
+     * 非流式调用（默认经过响应缓存）
      */
     public Mono<String> askQuestion(String question, List<String> contexts, String model) {
-        List<Map<String, String>> messages = List.of(
+        return askQuestion(question, contexts, model, true);
+    }
+
+    /**
+     * 非流式调用
+     * 相同模型、参数和（规范化后）消息的结果先查两级响应缓存；useCache=false 时强制调用模型。
+     * 每次调用记录一条 qa_history（是否命中缓存、耗时）
+     */
+    public Mono<String> askQuestion(String question, List<String> contexts, String model, boolean useCache) {
+        return askQuestion(question, contexts, buildMessages(question, contexts),
+                model != null ? model : DEFAULT_MODEL, DIRECT_TASK, useCache);
+    }
+
+    /**
+     * 非流式调用 - 按任务类型和提示长度路由模型
+     */
+    public Mono<String> askQuestion(String question, List<String> contexts, ModelRouter.Task task, boolean useCache) {
+        List<Map<String, String>> messages = buildMessages(question, contexts);
+        String model = modelRouter.route(task, tokenCounter.countMessages(messages));
+        return askQuestion(question, contexts, messages, model, task.key(), useCache);
+    }
+
+    private List<Map<String, String>> buildMessages(String question, List<String> contexts) {
+        return List.of(
                 Map.of("role", "system", "content", buildSystemPrompt()),
                 Map.of("role", "user", "content", buildUserPrompt(question, contexts))
         );
+    }
 
-        Map<String, Object> requestBody = Map.of(
-                "model", model != null ? model : "qwen-max",
-                "messages", messages,
-                "temperature", 0.3,
-                "top_p", 0.8,
-                "max_tokens", 2000,
-                "stream", false
-        );
+    private Mono<String> askQuestion(String question, List<String> contexts, List<Map<String, String>> messages,
+                                     String modelName, String task, boolean useCache) {
 
-        return webClient.post()
-                .uri("/chat/completions")
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(String.class)
-                .map(this::parseNonStreamResponse)
-                .timeout(Duration.ofSeconds(90))
-                .doOnError(e -> log.error("调用通义千问API失败: {}", e.getMessage()));
+        Map<String, Object> requestBody = new HashMap<>(SAMPLING_PARAMS);
+        requestBody.put("model", modelName);
+        requestBody.put("messages", messages);
+        requestBody.put("stream", false);
+
+        String cacheKey = useCache && responseCache.isEnabled()
+                ? responseCache.key(modelName, messages, SAMPLING_PARAMS) : null;
+        long start = System.currentTimeMillis();
+
+        // 并发只受 DashScopeGuard 限制（与流式调用共用同一个自适应上限），达到上限时立即拒绝，不排队。
+        // 整体超时放在保护范围外：超时按取消处理，生成较慢的长回答不计入熔断失败
+        Mono<String> remote = dashScopeGuard.protect(webClient.post()
+                        .uri("/chat/completions")
+                        .bodyValue(requestBody)
+                        .retrieve()
+                        .bodyToMono(String.class))
+                .timeout(CALL_TIMEOUT)
+                .map(response -> parseNonStreamResponse(response, modelName))
+                .doOnError(e -> log.error("调用通义千问API失败: {}", e.getMessage()))
+                .doOnNext(answer -> {
+                    modelRouter.recordLatency(modelName, task, (System.currentTimeMillis() - start) * 1_000_000L);
+                    if (cacheKey != null && isCacheable(answer)) {
+                        Schedulers.boundedElastic().schedule(() -> responseCache.put(cacheKey, answer));
+                    }
+                    recordHistory(question, contexts, modelName, answer, false, start);
+                });
+
+        if (cacheKey == null) {
+            return remote;
+        }
+
+        return Mono.fromCallable(() -> responseCache.get(cacheKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(answer -> {
+                    log.debug("AI响应缓存命中: {}", cacheKey);
+                    recordHistory(question, contexts, modelName, answer, true, start);
+                })
+                .switchIfEmpty(remote);
+    }
+
+    /**
+     * 非流式调用并阻塞等待结果（远程调用受对话接口并发限制）
+     * 供同步业务（学习计划、复习建议、文件摘要等）使用，调用线程应为虚拟线程
+     */
+    public String askQuestionBlocking(String question, List<String> contexts, String model, Duration timeout) {
+        return askQuestion(question, contexts, model).block(timeout);
+    }
+
+    /**
+     * 非流式调用并阻塞等待结果，可绕过响应缓存
+     */
+    public String askQuestionBlocking(String question, List<String> contexts, String model, Duration timeout,
+                                      boolean useCache) {
+        return askQuestion(question, contexts, model, useCache).block(timeout);
+    }
+
+    /**
+     * 非流式调用并阻塞等待结果 - 按任务类型路由模型（经过响应缓存）
+     */
+    public String askQuestionBlocking(String question, List<String> contexts, ModelRouter.Task task,
+                                      Duration timeout) {
+        return askQuestion(question, contexts, task, true).block(timeout);
+    }
+
+    private boolean isCacheable(String answer) {
+        return answer != null && !answer.isBlank()
+                && !MALFORMED_RESPONSE.equals(answer) && !PARSE_FAILED.equals(answer);
+    }
+
+    /**
+     * 记录问答历史（异步写库，失败只记日志）
+     */
+    private void recordHistory(String question, List<String> contexts, String model, String answer,
+                               boolean fromCache, long start) {
+        int responseTime = (int) (System.currentTimeMillis() - start);
+        Schedulers.boundedElastic().schedule(() -> {
+            try {
+                QaHistory history = new QaHistory();
+                // question 列为 varchar(255)，完整提示词过长时截断
+                history.setQuestion(question != null && question.length() > 255
+                        ? question.substring(0, 255) : question);
+                history.setAnswer(answer);
+                if (contexts != null && !contexts.isEmpty()) {
+                    history.setContexts(objectMapper.writeValueAsString(contexts));
+                }
+                history.setFromCache(fromCache);
+                history.setResponseTime(responseTime);
+                history.setModelUsed(model);
+                qaHistoryRepository.save(history);
+            } catch (Exception e) {
+                log.warn("记录问答历史失败: {}", e.getMessage());
+            }
+        });
     }
 
     /**
      * 解析非流式响应
      */
-    private String parseNonStreamResponse(String response) {
+    private String parseNonStreamResponse(String response, String model) {
         try {
             Map responseMap = objectMapper.readValue(response, Map.class);
+            if (responseMap.get("usage") instanceof Map<?, ?> usage) {
+                modelRouter.recordUsage(model, intValue(usage.get("prompt_tokens")),
+                        intValue(usage.get("completion_tokens")));
+            }
             List<Map<String, Object>> choices = (List<Map<String, Object>>) responseMap.get("choices");
             if (choices != null && !choices.isEmpty()) {
                 Map<String, Object> choice = choices.get(0);
                 Map<String, String> message = (Map<String, String>) choice.get("message");
                 return message.get("content");
             }
-            return "AI服务响应格式异常";
+            return MALFORMED_RESPONSE;
         } catch (Exception e) {
             log.error("解析API响应失败", e);
-            return "解析响应失败";
+            return PARSE_FAILED;
+        }
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
+    /**
+     * 批量文本向量化（OpenAI 兼容 embeddings 接口）
+     */
+    public Mono<List<float[]>> embedTexts(List<String> texts, String model) {
+        Map<String, Object> requestBody = Map.of(
+                "model", model != null ? model : "text-embedding-v2",
+                "input", texts,
+                "encoding_format", "float"
+        );
+
+        return webClient.post()
+                .uri("/embeddings")
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(response -> parseEmbeddingResponse(response, texts.size()))
+                .timeout(Duration.ofSeconds(30))
+                .doOnError(e -> log.error("调用向量化API失败: {}", e.getMessage()));
+    }
+
+    /**
+     * 解析向量化响应，按 index 还原输入顺序
+     */
+    private List<float[]> parseEmbeddingResponse(String response, int expected) {
+        try {
+            JsonNode data = objectMapper.readTree(response).path("data");
+            float[][] vectors = new float[expected][];
+            for (JsonNode item : data) {
+                JsonNode embedding = item.path("embedding");
+                float[] vector = new float[embedding.size()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = (float) embedding.get(i).asDouble();
+                }
+                vectors[item.path("index").asInt()] = vector;
+            }
+            List<float[]> result = new ArrayList<>(expected);
+            for (float[] vector : vectors) {
+                if (vector == null) {
+                    throw new IllegalStateException("向量化响应条数不足");
+                }
+                result.add(vector);
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("解析向量化响应失败", e);
+            throw new RuntimeException("解析向量化响应失败: " + e.getMessage(), e);
         }
     }
 
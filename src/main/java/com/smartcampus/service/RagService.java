@@ -1,35 +1,114 @@
 package com.smartcampus.service;
 
+import com.smartcampus.entity.KnowledgeDocument;
+import com.smartcampus.entity.LearningFile;
+import com.smartcampus.repository.KnowledgeDocumentRepository;
+import com.smartcampus.utils.HnswIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * RAG 服务 - 向量检索知识库后再调用通义千问
+ */
 @Service
+@Slf4j
+@RequiredArgsConstructor
 public class RagService {
 
+    private final QianWenService qianWenService;
+    private final VectorStoreService vectorStoreService;
+    private final KnowledgeDocumentRepository knowledgeDocumentRepository;
+    private final TextEmbedder textEmbedder;
+
+    @Value("${ai.rag.top-k:3}")
+    private int topK;
+
+    @Value("${ai.rag.similarity-threshold:0.7}")
+    private float similarityThreshold;
+
     public String answerWithRAG(String question, String userId) {
-        // 你的原有RAG逻辑...
-        // 这里简化为直接调用通义千问
-        return "这是基于RAG生成的回答...";
+        List<String> contexts = retrieveContexts(question);
+        log.info("RAG检索完成，用户: {}, 命中资料数: {}", userId, contexts.size());
+        return qianWenService.askQuestionBlocking(question, contexts, ModelRouter.Task.RAG, Duration.ofSeconds(90));
     }
 
     // 新增流式输出方法
     public Flux<String> answerWithRAGStream(String question, String userId) {
-        return Flux.create(emitter -> {
-            try {
-                // 模拟流式输出
-                String fullAnswer = answerWithRAG(question, userId);
-                String[] words = fullAnswer.split("");
-
-                for (String word : words) {
-                    if (!emitter.isCancelled()) {
-                        emitter.next(word);
-                        Thread.sleep(50); // 控制输出速度
-                    }
+        return Mono.fromCallable(() -> answerWithRAG(question, userId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flux();
+    }
+
+    /**
+     * 检索与问题最相关的知识库片段（按相似度降序）
+     */
+    public List<String> retrieveContexts(String question) {
+        List<KnowledgeDocument> documents = retrieve(VectorStoreService.KNOWLEDGE_BASE_NAMESPACE,
+                question, topK, similarityThreshold, false);
+        return documents.stream().map(KnowledgeDocument::getContent).toList();
+    }
+
+    /**
+     * 检索文件中与问题最相关的分块（按原文顺序返回，便于模型阅读）
+     *
+     * @return 分块列表；文件尚未入库时返回 null，由调用方降级处理
+     */
+    public List<KnowledgeDocument> retrieveFileChunks(LearningFile file, String question, int limit) {
+        String namespace = VectorStoreService.fileNamespace(file);
+        if (vectorStoreService.size(namespace) == 0) {
+            return null;
+        }
+        // 用户明确引用了该文件，不设相似度阈值
+        return retrieve(namespace, question, limit, -1f, true);
+    }
+
+    private List<KnowledgeDocument> retrieve(String namespace, String question, int limit,
+                                             float minScore, boolean documentOrder) {
+        if (vectorStoreService.size(namespace) == 0) {
+            return List.of();
+        }
+
+        try {
+            float[] queryEmbedding = textEmbedder.embed(List.of(question)).getFirst();
+
+            List<HnswIndex.Result> hits = vectorStoreService.search(namespace, queryEmbedding, limit, minScore);
+            if (hits.isEmpty()) {
+                return List.of();
+            }
+
+            Map<Long, KnowledgeDocument> documents = knowledgeDocumentRepository
+                    .findAllById(hits.stream().map(HnswIndex.Result::key).toList())
+                    .stream()
+                    .collect(Collectors.toMap(KnowledgeDocument::getId, Function.identity()));
+
+            List<KnowledgeDocument> results = new ArrayList<>(hits.size());
+            for (HnswIndex.Result hit : hits) {
+                KnowledgeDocument document = documents.get(hit.key());
+                if (document != null && document.getContent() != null) {
+                    results.add(document);
                 }
-                emitter.complete();
-            } catch (Exception e) {
-                emitter.error(e);
             }
-        });
+            if (documentOrder) {
+                // 分块按顺序写入，ID 递增即原文顺序
+                results.sort(Comparator.comparing(KnowledgeDocument::getId));
+            }
+            return results;
+        } catch (Exception e) {
+            log.error("向量检索失败，退化为无检索回答: namespace={}", namespace, e);
+            return List.of();
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package com.smartcampus.service;
 import com.smartcampus.entity.StudyTask;
 import com.smartcampus.exception.BusinessException;
 import com.smartcampus.repository.StudyTaskRepository;
+import com.smartcampus.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -18,6 +19,9 @@ public class ReviewAdviceService {
     private final QianWenService qianWenService;
     private final StudyTaskRepository studyTaskRepository;
 
+    // 相同提示词（任务标题、描述、复习阶段相同）的并发生成只调用一次AI
+    private final SingleFlight<String, String> inFlight = new SingleFlight<>();
+
     /**
      * 为复习任务生成AI复习建议
      * @param userId 用户ID
@@ -44,7 +48,7 @@ public class ReviewAdviceService {
         // 3. 调用AI服务
         String adviceText;
         try {
-            adviceText = callAIService(prompt);
+            adviceText = inFlight.execute(prompt, () -> callAIService(prompt));
             if (adviceText == null || adviceText.trim().isEmpty()) {
                 throw new Exception("AI服务返回空响应");
             }
@@ -203,8 +207,8 @@ public class ReviewAdviceService {
     private String callAIService(String prompt) throws Exception {
         try {
             log.info("正在调用AI服务生成复习建议...");
-            return qianWenService.askQuestion(prompt, Collections.emptyList(), "qwen-max")
-                    .block(java.time.Duration.ofSeconds(120));
+            return qianWenService.askQuestionBlocking(prompt, Collections.emptyList(),
+                    ModelRouter.Task.REVIEW_ADVICE, java.time.Duration.ofSeconds(120));
         } catch (Exception e) {
             log.error("调用AI服务失败: {}", e.getMessage(), e);
             throw new Exception("AI服务调用失败: " + e.getMessage());
@@ -0,0 +1,163 @@
+package com.smartcampus.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.smartcampus.entity.AiConversation;
+import com.smartcampus.repository.AiConversationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 会话滚动摘要 - 把移出历史窗口的早期对话压缩为一段摘要
+ *
+ * 摘要按会话缓存并记录已覆盖的轮数。早期轮数超过已覆盖轮数时，在后台执行器中增量更新
+ * （已有摘要 + 新移出窗口的轮次），请求不等待生成，本轮先使用已有摘要；同一会话同时只有一个更新任务。
+ * 摘要只保存在进程内，过期或重启后按需重新生成。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SessionSummaryService {
+
+    private final AiConversationRepository conversationRepository;
+    private final QianWenService qianWenService;
+    private final TokenCounter tokenCounter;
+    private final ExecutorService aiTaskExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.context.summary.max-tokens:400}")
+    private int summaryMaxTokens;  // 摘要长度上限
+
+    @Value("${ai.context.summary.batch-turns:20}")
+    private int batchTurns;  // 每次合并进摘要的最多轮数
+
+    @Value("${ai.context.summary.turn-max-tokens:300}")
+    private int turnMaxTokens;  // 送入摘要的每条问题/回答 token 上限
+
+    @Value("${ai.context.max-sessions:10000}")
+    private long maxSessions;
+
+    @Value("${ai.context.session-idle-minutes:30}")
+    private long sessionIdleMinutes;
+
+    /**
+     * 会话摘要及其覆盖的最早轮数
+     */
+    private record Summary(String text, long coveredTurns) {
+    }
+
+    // 用户ID:会话ID -> 摘要
+    private Cache<String, Summary> summaries;
+
+    // 正在更新摘要的会话
+    private final Set<String> updating = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void initCache() {
+        summaries = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(Duration.ofMinutes(sessionIdleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, summaries, "session-summary");
+    }
+
+    /**
+     * 获取会话摘要（可能落后于最新对话），摘要未覆盖全部早期轮次时在后台更新
+     *
+     * @param olderTurns 已移出历史窗口、应由摘要覆盖的最早轮数
+     * @return 摘要文本；尚未生成时返回 null
+     */
+    public String getSummary(Long userId, String sessionId, long olderTurns) {
+        String key = userId + ":" + sessionId;
+        Summary summary = summaries.getIfPresent(key);
+        long covered = summary != null ? summary.coveredTurns() : 0;
+        if (olderTurns > covered) {
+            scheduleUpdate(key, userId, sessionId, olderTurns);
+        }
+        return summary != null ? summary.text() : null;
+    }
+
+    /**
+     * 清理会话摘要
+     */
+    public void invalidate(Long userId, String sessionId) {
+        summaries.invalidate(userId + ":" + sessionId);
+    }
+
+    private void scheduleUpdate(String key, Long userId, String sessionId, long olderTurns) {
+        if (!updating.add(key)) {
+            return;
+        }
+        try {
+            aiTaskExecutor.execute(() -> {
+                try {
+                    update(key, userId, sessionId, olderTurns);
+                } catch (Exception e) {
+                    log.warn("会话摘要更新失败，会话: {}, 原因: {}", sessionId, e.getMessage());
+                } finally {
+                    updating.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            updating.remove(key);
+        }
+    }
+
+    /**
+     * 分批把未覆盖的早期轮次合并进摘要
+     */
+    private void update(String key, Long userId, String sessionId, long olderTurns) {
+        Summary current = summaries.getIfPresent(key);
+        String text = current != null ? current.text() : null;
+        long covered = current != null ? current.coveredTurns() : 0;
+
+        while (covered < olderTurns) {
+            int limit = (int) Math.min(batchTurns, olderTurns - covered);
+            List<AiConversation> turns = conversationRepository.findSessionRange(
+                    userId, sessionId, (int) covered, limit);
+            if (turns.isEmpty()) {
+                break;
+            }
+
+            String merged = qianWenService.askQuestionBlocking(buildPrompt(text, turns), List.of(),
+                    ModelRouter.Task.SESSION_SUMMARY, Duration.ofSeconds(60));
+            if (merged == null || merged.isBlank()) {
+                break;
+            }
+            text = tokenCounter.truncate(merged.trim(), summaryMaxTokens);
+            covered += turns.size();
+            summaries.put(key, new Summary(text, covered));
+        }
+        log.debug("会话摘要已更新，会话: {}, 覆盖轮数: {}", sessionId, covered);
+    }
+
+    private String buildPrompt(String previousSummary, List<AiConversation> turns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("请把以下学习对话压缩为一段摘要，保留用户的学习目标、关键问题、结论和仍未解决的问题，")
+                .append("不超过").append(summaryMaxTokens / 2).append("字，直接输出摘要正文。\n\n");
+        if (previousSummary != null && !previousSummary.isEmpty()) {
+            sb.append("【已有摘要】\n").append(previousSummary).append("\n\n");
+        }
+        sb.append("【新的对话】\n");
+        for (AiConversation turn : turns) {
+            sb.append("用户：").append(tokenCounter.truncate(turn.getQuestion(), turnMaxTokens)).append("\n");
+            if (turn.getAnswer() != null) {
+                sb.append("助手：").append(tokenCounter.truncate(turn.getAnswer(), turnMaxTokens)).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package com.smartcampus.service;
+
+import java.util.List;
+
+/**
+ * 文本向量化接口
+ */
+public interface TextEmbedder {
+
+    /**
+     * 批量向量化，返回顺序与输入一致
+     *
+     * @param texts 文本列表，长度不超过 {@link #maxBatchSize()}
+     * @return 向量列表
+     */
+    List<float[]> embed(List<String> texts);
+
+    /**
+     * 单次调用允许的最大文本条数
+     */
+    int maxBatchSize();
+
+    /**
+     * 向量模型名称（写入 knowledge_documents.embedding_model）
+     */
+    String modelName();
+}
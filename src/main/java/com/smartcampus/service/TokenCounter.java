@@ -0,0 +1,198 @@
+package com.smartcampus.service;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.huggingface.tokenizers.jni.CharSpan;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * token 计数服务 - 本地分词器计数与按 token 截断
+ *
+ * ai.tokenizer.path 指向 tokenizer.json（或 HuggingFace 模型名）时使用 DJL HuggingFace 分词器，
+ * 未配置或加载失败时退化为估算：非 ASCII 字符按 1 个 token，ASCII 字符按 4 个一个 token。
+ * 短文本直接计算，较长文本（系统提示、文件摘要、历史轮次等会被反复计数的片段）的结果按总字符数缓存。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenCounter {
+
+    // 每条消息的角色标记等固定开销
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    // 短于该长度的文本不缓存
+    private static final int MIN_CACHED_LENGTH = 64;
+
+    // 截断时先按字符预切，避免对整篇文件分词；单个 token 不会超过这么多字符
+    private static final int MAX_CHARS_PER_TOKEN = 16;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.tokenizer.path:}")
+    private String tokenizerPath;
+
+    @Value("${ai.tokenizer.cache-max-chars:5000000}")
+    private long cacheMaxChars;
+
+    private HuggingFaceTokenizer tokenizer;  // null 表示使用估算
+    private Cache<String, Integer> countCache;
+
+    @PostConstruct
+    public void init() {
+        countCache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxChars)
+                .weigher((String text, Integer count) -> text.length())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, countCache, "token-count");
+
+        if (tokenizerPath == null || tokenizerPath.isBlank()) {
+            log.info("未配置分词器，token 数按字符估算");
+            return;
+        }
+        Map<String, String> options = Map.of(
+                "addSpecialTokens", "false",
+                "truncation", "false",
+                "padding", "false");
+        try {
+            Path path = Path.of(tokenizerPath);
+            tokenizer = Files.exists(path)
+                    ? HuggingFaceTokenizer.newInstance(path, options)
+                    : HuggingFaceTokenizer.newInstance(tokenizerPath, options);
+            log.info("分词器加载完成: {}", tokenizerPath);
+        } catch (Exception | UnsatisfiedLinkError e) {
+            log.warn("分词器加载失败，token 数按字符估算: {}, 原因: {}", tokenizerPath, e.toString());
+            tokenizer = null;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (tokenizer != null) {
+            tokenizer.close();
+        }
+    }
+
+    public boolean isExact() {
+        return tokenizer != null;
+    }
+
+    /**
+     * 文本的 token 数
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (text.length() < MIN_CACHED_LENGTH) {
+            return countUncached(text);
+        }
+        return countCache.get(text, this::countUncached);
+    }
+
+    /**
+     * 单条消息的 token 数（含固定开销）
+     */
+    public int countMessage(Map<String, String> message) {
+        return count(message.get("content")) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    /**
+     * 消息列表的 token 数
+     */
+    public int countMessages(List<Map<String, String>> messages) {
+        int total = 0;
+        for (Map<String, String> message : messages) {
+            total += countMessage(message);
+        }
+        return total;
+    }
+
+    /**
+     * 截断到最多 maxTokens 个 token，在 token 边界处切分；未超出时原样返回
+     */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        if (maxTokens <= 0) {
+            return "";
+        }
+        long maxChars = (long) maxTokens * MAX_CHARS_PER_TOKEN;
+        String candidate = text.length() > maxChars ? text.substring(0, (int) maxChars) : text;
+        int end = tokenizer != null ? exactCutoff(candidate, maxTokens) : estimatedCutoff(candidate, maxTokens);
+        return end >= text.length() ? text : text.substring(0, end);
+    }
+
+    private int countUncached(String text) {
+        if (tokenizer != null) {
+            try {
+                return tokenizer.encode(text).getIds().length;
+            } catch (Exception e) {
+                log.debug("分词失败，按字符估算: {}", e.getMessage());
+            }
+        }
+        return estimate(text);
+    }
+
+    /**
+     * 第 maxTokens 个 token 结束处的字符位置
+     */
+    private int exactCutoff(String text, int maxTokens) {
+        try {
+            Encoding encoding = tokenizer.encode(text);
+            CharSpan[] spans = encoding.getCharTokenSpans();
+            if (spans.length <= maxTokens) {
+                return text.length();
+            }
+            // 特殊 token 没有字符位置，向前找最近的普通 token
+            for (int i = maxTokens - 1; i >= 0; i--) {
+                if (spans[i] != null) {
+                    return spans[i].getEnd();
+                }
+            }
+            return 0;
+        } catch (Exception e) {
+            log.debug("分词失败，按字符估算: {}", e.getMessage());
+            return estimatedCutoff(text, maxTokens);
+        }
+    }
+
+    /**
+     * 估算：以 1/4 token 为单位累计，非 ASCII 字符 4 个单位，ASCII 字符 1 个单位
+     */
+    static int estimate(String text) {
+        long units = 0;
+        for (int i = 0; i < text.length(); i++) {
+            units += text.charAt(i) < 0x80 ? 1 : 4;
+        }
+        return (int) ((units + 3) / 4);
+    }
+
+    private static int estimatedCutoff(String text, int maxTokens) {
+        long budget = (long) maxTokens * 4;
+        long units = 0;
+        for (int i = 0; i < text.length(); i++) {
+            units += text.charAt(i) < 0x80 ? 1 : 4;
+            if (units > budget) {
+                // 不拆开代理对
+                return Character.isLowSurrogate(text.charAt(i)) ? i - 1 : i;
+            }
+        }
+        return text.length();
+    }
+}
@@ -1,4 +1,296 @@
 package com.smartcampus.service;
 
+import com.smartcampus.entity.KnowledgeDocument;
+import com.smartcampus.entity.LearningFile;
+import com.smartcampus.repository.KnowledgeDocumentRepository;
+import com.smartcampus.utils.FlatVectorIndex;
+import com.smartcampus.utils.HnswIndex;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 向量存储服务 - 进程内 HNSW 索引，启动时从 knowledge_documents 加载
+ *
+ * 公共知识库（{@value #KNOWLEDGE_BASE_NAMESPACE}）建一个 HNSW 索引；
+ * 学习文件按内容哈希各占一个命名空间，分块数量少，只存向量、检索时暴力扫描，不为每个文件建图。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
 public class VectorStoreService {
-}
\ No newline at end of file
+
+    public static final String KNOWLEDGE_BASE_NAMESPACE = "kb";
+    public static final String LEARNING_FILE_SOURCE_TYPE = "LEARNING_FILE";
+    private static final String LEARNING_FILE_PREFIX = "learning_file:";
+
+    private final KnowledgeDocumentRepository knowledgeDocumentRepository;
+
+    @Value("${ai.rag.index.m:16}")
+    private int m;
+
+    @Value("${ai.rag.index.ef-construction:100}")
+    private int efConstruction;
+
+    @Value("${ai.rag.index.ef-search:64}")
+    private int efSearch;
+
+    private HnswIndex knowledgeBase;
+
+    // 学习文件命名空间 -> 向量
+    private final Map<String, FlatVectorIndex> fileIndexes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        knowledgeBase = new HnswIndex(m, efConstruction);
+    }
+
+    /**
+     * 启动完成后加载知识库向量
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadKnowledgeDocuments() {
+        long start = System.currentTimeMillis();
+        int loaded = 0;
+        int skipped = 0;
+
+        try {
+            for (Object[] row : knowledgeDocumentRepository.findActiveEmbeddings()) {
+                Long id = ((Number) row[0]).longValue();
+                float[] embedding = decodeEmbedding((String) row[1]);
+                String namespace = namespaceOf((String) row[2], (String) row[3]);
+                if (embedding == null || !add(namespace, id, embedding)) {
+                    skipped++;
+                    continue;
+                }
+                loaded++;
+            }
+            log.info("向量索引加载完成，文档数: {}, 命名空间数: {}, 跳过: {}, 耗时: {} ms",
+                    loaded, fileIndexes.size() + 1, skipped, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("向量索引加载失败，RAG检索将不可用", e);
+        }
+    }
+
+    /**
+     * 新增或更新文档向量
+     */
+    public void addDocument(KnowledgeDocument document) {
+        String namespace = namespaceOf(document.getSourceType(), document.getSourcePath());
+        float[] embedding = decodeEmbedding(document.getVectorEmbedding());
+        if (embedding == null || !Boolean.TRUE.equals(document.getIsActive())) {
+            remove(namespace, document.getId());
+            return;
+        }
+        add(namespace, document.getId(), embedding);
+    }
+
+    /**
+     * 写入向量，维度与命名空间已有向量不一致时返回 false
+     */
+    public boolean add(String namespace, long id, float[] embedding) {
+        if (KNOWLEDGE_BASE_NAMESPACE.equals(namespace)) {
+            if (knowledgeBase.dimension() > 0 && knowledgeBase.dimension() != embedding.length) {
+                log.warn("向量维度不一致，忽略: namespace={}, id={}, 期望 {}，实际 {}",
+                        namespace, id, knowledgeBase.dimension(), embedding.length);
+                return false;
+            }
+            knowledgeBase.add(id, embedding);
+            return true;
+        }
+
+        FlatVectorIndex index = fileIndexes.computeIfAbsent(namespace, k -> new FlatVectorIndex());
+        if (index.dimension() > 0 && index.dimension() != embedding.length) {
+            log.warn("向量维度不一致，忽略: namespace={}, id={}, 期望 {}，实际 {}",
+                    namespace, id, index.dimension(), embedding.length);
+            return false;
+        }
+        index.add(id, embedding);
+        return true;
+    }
+
+    /**
+     * 移除文档向量
+     */
+    public void remove(String namespace, Long documentId) {
+        if (documentId == null) {
+            return;
+        }
+        if (KNOWLEDGE_BASE_NAMESPACE.equals(namespace)) {
+            knowledgeBase.remove(documentId);
+            return;
+        }
+        FlatVectorIndex index = fileIndexes.get(namespace);
+        if (index != null) {
+            index.remove(documentId);
+        }
+    }
+
+    /**
+     * 整体发布学习文件命名空间：入库完成后一次性替换，检索不会看到写了一半的文件
+     */
+    public void publishNamespace(String namespace, FlatVectorIndex index) {
+        fileIndexes.put(namespace, index);
+    }
+
+    /**
+     * 从数据库加载学习文件命名空间的有效向量（其他实例完成的入库），返回向量数
+     */
+    public int loadNamespace(String namespace) {
+        FlatVectorIndex index = new FlatVectorIndex();
+        List<Object[]> rows = knowledgeDocumentRepository.findActiveEmbeddingsBySource(
+                LEARNING_FILE_SOURCE_TYPE, namespace);
+        for (Object[] row : rows) {
+            float[] embedding = decodeEmbedding((String) row[1]);
+            if (embedding != null && (index.dimension() < 0 || index.dimension() == embedding.length)) {
+                index.add(((Number) row[0]).longValue(), embedding);
+            }
+        }
+        if (index.size() > 0) {
+            fileIndexes.putIfAbsent(namespace, index);
+        }
+        return index.size();
+    }
+
+    /**
+     * 移除整个学习文件命名空间（如文件重新入库）
+     */
+    public void removeNamespace(String namespace) {
+        fileIndexes.remove(namespace);
+    }
+
+    /**
+     * 余弦相似度 top-k 检索
+     *
+     * @param namespace      命名空间
+     * @param queryEmbedding 查询向量
+     * @param topK           返回条数
+     * @param minScore       最低相似度
+     */
+    public List<HnswIndex.Result> search(String namespace, float[] queryEmbedding, int topK, float minScore) {
+        if (queryEmbedding == null) {
+            return List.of();
+        }
+
+        List<HnswIndex.Result> results;
+        if (KNOWLEDGE_BASE_NAMESPACE.equals(namespace)) {
+            if (knowledgeBase.size() == 0 || !checkDimension(namespace, knowledgeBase.dimension(), queryEmbedding)) {
+                return List.of();
+            }
+            // 小索引直接暴力扫描，结果精确且更快
+            results = knowledgeBase.size() <= efSearch
+                    ? knowledgeBase.exactSearch(queryEmbedding, topK)
+                    : knowledgeBase.search(queryEmbedding, topK, efSearch, null);
+        } else {
+            FlatVectorIndex index = fileIndexes.get(namespace);
+            if (index == null || index.size() == 0 || !checkDimension(namespace, index.dimension(), queryEmbedding)) {
+                return List.of();
+            }
+            results = index.search(queryEmbedding, topK);
+        }
+        results.removeIf(r -> r.score() < minScore);
+        return results;
+    }
+
+    public int size(String namespace) {
+        if (KNOWLEDGE_BASE_NAMESPACE.equals(namespace)) {
+            return knowledgeBase.size();
+        }
+        FlatVectorIndex index = fileIndexes.get(namespace);
+        return index != null ? index.size() : 0;
+    }
+
+    private static boolean checkDimension(String namespace, int dimension, float[] queryEmbedding) {
+        if (queryEmbedding.length != dimension) {
+            log.warn("查询向量维度不一致: namespace={}, 期望 {}，实际 {}",
+                    namespace, dimension, queryEmbedding.length);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 学习文件分块对应的命名空间（同时作为 knowledge_documents.source_path）
+     *
+     * 按内容哈希划分：同一份文件被多次上传时共用一套分块和向量；
+     * 上传早于哈希字段的旧文件仍按文件ID划分。
+     */
+    public static String fileNamespace(LearningFile file) {
+        Map<String, Object> metadata = file.getMetadata();
+        if (metadata != null && metadata.get(ExtractedTextCache.CONTENT_HASH_KEY) instanceof String hash) {
+            return LEARNING_FILE_PREFIX + hash;
+        }
+        return LEARNING_FILE_PREFIX + file.getId();
+    }
+
+    private static String namespaceOf(String sourceType, String sourcePath) {
+        if (LEARNING_FILE_SOURCE_TYPE.equals(sourceType) && sourcePath != null) {
+            return sourcePath;
+        }
+        return KNOWLEDGE_BASE_NAMESPACE;
+    }
+
+    /**
+     * 解析数据库中的向量：支持 JSON 数组和 Base64（小端 float32）两种格式
+     */
+    public static float[] decodeEmbedding(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        try {
+            String trimmed = text.trim();
+            if (trimmed.startsWith("[")) {
+                return parseJsonArray(trimmed);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(trimmed))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            float[] vector = new float[buffer.remaining() / Float.BYTES];
+            buffer.asFloatBuffer().get(vector);
+            return vector;
+        } catch (Exception e) {
+            log.warn("向量格式无法解析: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 编码向量为 Base64（小端 float32），比 JSON 文本体积小约 60%
+     */
+    public static String encodeEmbedding(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    private static float[] parseJsonArray(String json) {
+        int end = json.lastIndexOf(']');
+        int count = 0;
+        for (int i = 1; i < end; i++) {
+            if (json.charAt(i) == ',') {
+                count++;
+            }
+        }
+        float[] vector = new float[count + 1];
+        int idx = 0;
+        int tokenStart = 1;
+        for (int i = 1; i <= end; i++) {
+            char c = i == end ? ',' : json.charAt(i);
+            if (c == ',') {
+                vector[idx++] = Float.parseFloat(json.substring(tokenStart, i).trim());
+                tokenStart = i + 1;
+            }
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,33 @@
+package com.smartcampus.service.extract;
+
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.extractor.WordExtractor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * DOC（旧版 Word）：逐段输出
+ */
+@Component
+public class DocDocumentExtractor implements DocumentExtractor {
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("doc");
+    }
+
+    @Override
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        try (InputStream is = source.openStream();
+             HWPFDocument doc = new HWPFDocument(is);
+             WordExtractor extractor = new WordExtractor(doc)) {
+            for (String paragraph : extractor.getParagraphText()) {
+                out.write(paragraph);
+            }
+        }
+    }
+}
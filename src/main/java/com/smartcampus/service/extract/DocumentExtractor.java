@@ -0,0 +1,29 @@
+package com.smartcampus.service.extract;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * 文档文本提取 SPI - 每种格式一个实现，注册为 Spring Bean 后由 FileProcessingService 按扩展名和内容识别选用
+ *
+ * 实现把文本边读边写入 out，不在内存中拼出整篇文本；out 达到字符上限时写入抛出
+ * ExtractionSink.LimitReachedException，实现不应吞掉 IOException；
+ * 只提取出部分内容时，写完后抛出 ExtractionSink.IncompleteException。
+ */
+public interface DocumentExtractor {
+
+    /**
+     * 处理的扩展名（小写，不含点）
+     */
+    Set<String> extensions();
+
+    void extract(DocumentSource source, Writer out) throws IOException;
+
+    /**
+     * 是否自行控制解析并发；为 false 时调用方在提取期间持有一个 EXTRACTION 许可
+     */
+    default boolean selfLimited() {
+        return false;
+    }
+}
@@ -0,0 +1,125 @@
+package com.smartcampus.service.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 待提取的文档 - 统一已保存文件与上传文件两种来源
+ *
+ * 处理器按需选择读取方式：顺序读取用 openStream()，需要随机访问的格式（PDF、OOXML、OLE2）用 file() 或 openChannel()。
+ * 上传文件第一次需要随机访问时才暂存为临时文件，close() 时删除。
+ */
+@Slf4j
+public final class DocumentSource implements Closeable {
+
+    @FunctionalInterface
+    private interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private final String name;
+    private final long size;
+    private final StreamOpener opener;
+    private Path path;
+    private boolean temporary;
+
+    private DocumentSource(String name, long size, StreamOpener opener, Path path) {
+        this.name = name == null ? "" : name;
+        this.size = size;
+        this.opener = opener;
+        this.path = path;
+    }
+
+    public static DocumentSource of(File file) {
+        Path path = file.toPath();
+        return new DocumentSource(file.getName(), file.length(), () -> Files.newInputStream(path), path);
+    }
+
+    public static DocumentSource of(MultipartFile file) {
+        return new DocumentSource(file.getOriginalFilename(), file.getSize(), file::getInputStream, null);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 小写扩展名，无扩展名时为空串
+     */
+    public String extension() {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+
+    public InputStream openStream() throws IOException {
+        return path != null ? Files.newInputStream(path) : opener.open();
+    }
+
+    public SeekableByteChannel openChannel() throws IOException {
+        return Files.newByteChannel(file().toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * 本地文件；上传来源在第一次调用时暂存到临时文件
+     */
+    public synchronized File file() throws IOException {
+        if (path == null) {
+            Path temp = Files.createTempFile("extract-", "." + extension());
+            try (InputStream in = opener.open()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            path = temp;
+            temporary = true;
+        }
+        return path.toFile();
+    }
+
+    /**
+     * 文件开头最多 length 个字节，用于按内容识别格式
+     */
+    public byte[] header(int length) throws IOException {
+        if (path != null) {
+            try (SeekableByteChannel channel = openChannel()) {
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                    // 读满或到文件末尾
+                }
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+        try (InputStream in = opener.open()) {
+            return in.readNBytes(length);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (temporary) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("临时文件删除失败: {}", path);
+            }
+            temporary = false;
+        }
+    }
+}
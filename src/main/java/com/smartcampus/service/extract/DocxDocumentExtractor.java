@@ -0,0 +1,56 @@
+package com.smartcampus.service.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * DOCX：逐段输出非空段落；正文没有段落文本（如全是表格）时退回完整提取
+ */
+@Slf4j
+@Component
+public class DocxDocumentExtractor implements DocumentExtractor {
+
+    @Value("${file.extract.docx.max-paragraphs:1000}")
+    private int maxParagraphs;
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("docx");
+    }
+
+    @Override
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        try (InputStream is = source.openStream();
+             XWPFDocument doc = new XWPFDocument(is)) {
+            int paragraphCount = 0;
+            for (XWPFParagraph para : doc.getParagraphs()) {
+                String paraText = para.getText();
+                if (paraText != null && !paraText.trim().isEmpty()) {
+                    out.write(paraText);
+                    out.write('\n');
+                    paragraphCount++;
+                }
+                if (paragraphCount >= maxParagraphs) {
+                    log.warn("段落数超过{}，停止解析", maxParagraphs);
+                    break;
+                }
+            }
+
+            if (paragraphCount == 0) {
+                log.warn("段落提取为空，尝试完整提取");
+                try (XWPFWordExtractor extractor = new XWPFWordExtractor(doc)) {
+                    out.write(extractor.getText());
+                }
+            }
+        }
+    }
+}
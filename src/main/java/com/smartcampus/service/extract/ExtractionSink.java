@@ -0,0 +1,101 @@
+package com.smartcampus.service.extract;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 提取输出 - 限制总字符数的 Writer
+ *
+ * 达到上限时截断并抛出 LimitReachedException，让处理器尽早停止解析；
+ * close() 之后的写入抛出 IOException，用于超时后中止仍在运行的处理器。
+ * 处理器写完可用部分后抛出 IncompleteException，表示有内容缺失（如部分页面解析失败或超时）。
+ */
+public class ExtractionSink extends Writer {
+
+    /**
+     * 输出已达字符上限
+     */
+    public static class LimitReachedException extends IOException {
+        public LimitReachedException() {
+            super("提取内容达到字符上限");
+        }
+    }
+
+    /**
+     * 已写出的内容可用，但有部分内容缺失；结果可以返回给用户，不应缓存
+     */
+    public static class IncompleteException extends IOException {
+        public IncompleteException(String message) {
+            super(message);
+        }
+    }
+
+    private final Writer delegate;
+    private final long maxChars;
+    private long written = 0;
+    private boolean limitReached = false;
+    private boolean closed = false;
+
+    public ExtractionSink(Writer delegate, long maxChars) {
+        this.delegate = delegate;
+        this.maxChars = maxChars;
+    }
+
+    @Override
+    public synchronized void write(char[] buffer, int offset, int length) throws IOException {
+        ensureOpen();
+        long remaining = maxChars - written;
+        if (length > remaining) {
+            delegate.write(buffer, offset, (int) remaining);
+            written = maxChars;
+            limitReached = true;
+            throw new LimitReachedException();
+        }
+        delegate.write(buffer, offset, length);
+        written += length;
+    }
+
+    @Override
+    public synchronized void write(String str, int offset, int length) throws IOException {
+        ensureOpen();
+        long remaining = maxChars - written;
+        if (length > remaining) {
+            delegate.write(str, offset, (int) remaining);
+            written = maxChars;
+            limitReached = true;
+            throw new LimitReachedException();
+        }
+        delegate.write(str, offset, length);
+        written += length;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("提取已取消");
+        }
+        if (limitReached) {
+            throw new LimitReachedException();
+        }
+    }
+
+    public synchronized long written() {
+        return written;
+    }
+
+    public synchronized boolean limitReached() {
+        return limitReached;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        delegate.flush();
+    }
+
+    /**
+     * 停止接收输出；不关闭底层 Writer，由调用方决定
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+}
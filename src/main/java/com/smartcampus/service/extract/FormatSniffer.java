@@ -0,0 +1,80 @@
+package com.smartcampus.service.extract;
+
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+import java.io.IOException;
+import java.util.zip.ZipFile;
+
+/**
+ * 按文件内容识别格式 - 用于扩展名缺失或与内容不符（如把 PDF 改名为 .docx）的情况
+ *
+ * 先看文件头魔数：%PDF、ZIP（OOXML）、OLE2（旧版 Office）；后两种是容器格式，再按内部条目区分具体类型。
+ */
+public final class FormatSniffer {
+
+    private static final byte[] PDF_MAGIC = {'%', 'P', 'D', 'F', '-'};
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    private static final byte[] OLE2_MAGIC = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+            (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+
+    private FormatSniffer() {
+    }
+
+    /**
+     * 识别出的格式扩展名；无法识别（包括纯文本）时返回 null
+     */
+    public static String detect(DocumentSource source) throws IOException {
+        byte[] header = source.header(OLE2_MAGIC.length);
+        if (startsWith(header, PDF_MAGIC)) {
+            return "pdf";
+        }
+        if (startsWith(header, ZIP_MAGIC)) {
+            return detectOoxml(source);
+        }
+        if (startsWith(header, OLE2_MAGIC)) {
+            return detectOle2(source);
+        }
+        return null;
+    }
+
+    private static String detectOoxml(DocumentSource source) throws IOException {
+        try (ZipFile zip = new ZipFile(source.file())) {
+            if (zip.getEntry("word/document.xml") != null) {
+                return "docx";
+            }
+            if (zip.getEntry("xl/workbook.xml") != null) {
+                return "xlsx";
+            }
+            if (zip.getEntry("ppt/presentation.xml") != null) {
+                return "pptx";
+            }
+            return null;
+        }
+    }
+
+    private static String detectOle2(DocumentSource source) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(source.file(), true)) {
+            DirectoryNode root = fs.getRoot();
+            if (root.hasEntry("WordDocument")) {
+                return "doc";
+            }
+            if (root.hasEntry("Workbook") || root.hasEntry("Book")) {
+                return "xls";
+            }
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,309 @@
+package com.smartcampus.service.extract;
+
+import com.smartcampus.service.DownstreamLimiter;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * PDF 分页并行提取 - 按页码区间切分，多个区间在 aiTaskExecutor 上并发提取，按页序拼接
+ *
+ * PDDocument 不是线程安全的，每个工作线程各自加载一份文档，依次领取未处理的区间；
+ * 调用线程本身也是工作线程之一，即使辅助任务迟迟得不到调度也能独立完成全部区间。
+ * 每个区间提取前获取 EXTRACTION 许可，与其他解析任务共用同一并发上限。
+ *
+ * 内存：每个工作线程都完整解析一份文档，解析后的对象树常驻堆内存，PDFBox 的 MemoryUsageSetting
+ * 只管读取缓冲。因此每次加载从全局预算中按「文件大小（估算解析后的对象树）+ worker-memory-mb（读取缓冲）」
+ * 申请，读取缓冲超出部分写入临时文件。调用线程的加载在预算不足时阻塞等待（不超过超时时间），
+ * 即同时解析的文档总量受预算限制；辅助线程申请不到预算时不启动，剩余区间由已有线程串行完成。
+ * 单个文档的估算超过整个预算时按整个预算申请，独占预算运行。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PdfDocumentExtractor implements DocumentExtractor {
+
+    private static final long MB = 1024L * 1024L;
+    // writeTo 取走区间后留下的标记，之后迟到的结果写不进去
+    private static final RangeText TAKEN = new RangeText("", false);
+
+    private final ExecutorService aiTaskExecutor;
+    private final DownstreamLimiter downstreamLimiter;
+
+    @Value("${file.extract.pdf.pages-per-range:20}")
+    private int pagesPerRange;
+
+    @Value("${file.extract.pdf.max-parallel-ranges:4}")
+    private int maxParallelRanges;  // 单个文档最多同时提取的区间数
+
+    @Value("${file.extract.pdf.memory-budget-mb:256}")
+    private int memoryBudgetMb;     // 所有文档加载（解析后的对象树 + 读取缓冲）共享的内存预算
+
+    @Value("${file.extract.pdf.worker-memory-mb:32}")
+    private int workerMemoryMb;
+
+    @Value("${file.extract.pdf.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    private Semaphore memoryBudget;
+
+    @PostConstruct
+    public void init() {
+        memoryBudgetMb = Math.max(1, memoryBudgetMb);
+        memoryBudget = new Semaphore(memoryBudgetMb);
+        log.info("PDF分页提取: 每区间 {} 页, 单文档最多 {} 个区间并行, 内存预算 {} MB",
+                pagesPerRange, maxParallelRanges, memoryBudgetMb);
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("pdf");
+    }
+
+    /**
+     * 区间内部各自获取 EXTRACTION 许可，调用方不能再持有许可，否则并发上限为 1 时会互相等待
+     */
+    @Override
+    public boolean selfLimited() {
+        return true;
+    }
+
+    /**
+     * 提取全部页面文本；超时或个别区间失败时，其余区间照常输出，缺失区间以提示文字占位，
+     * 写完后抛出 IncompleteException
+     */
+    @Override
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        File file = source.file();
+        long start = System.currentTimeMillis();
+        long deadline = start + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+
+        int documentMb = reservationMb(file);
+        if (!reserve(documentMb, deadline)) {
+            throw new IOException("PDF解析等待内存预算超时: " + file.getName());
+        }
+
+        try (LoadedDocument first = load(file, documentMb)) {
+            int pageCount = first.document.getNumberOfPages();
+            int rangeSize = Math.max(1, pagesPerRange);
+            int rangeCount = Math.max(1, (pageCount + rangeSize - 1) / rangeSize);
+
+            Job job = new Job(file, pageCount, rangeSize, rangeCount, deadline);
+
+            int helpers = Math.min(rangeCount, Math.max(1, maxParallelRanges)) - 1;
+            for (int i = 0; i < helpers; i++) {
+                // 辅助线程各自再解析一份文档，预算不足时不再启动
+                if (!memoryBudget.tryAcquire(documentMb)) {
+                    log.info("PDF内存预算不足，{} 以 {} 个线程提取", file.getName(), i + 1);
+                    break;
+                }
+                try {
+                    aiTaskExecutor.execute(() -> {
+                        // 调度到时区间已被领完，不必再解析一份
+                        if (!job.hasPendingRanges()) {
+                            memoryBudget.release(documentMb);
+                            return;
+                        }
+                        try (LoadedDocument doc = load(file, documentMb)) {
+                            job.work(doc.document);
+                        } catch (Exception e) {
+                            // 辅助线程加载失败不影响结果，剩余区间由调用线程完成
+                            log.warn("PDF辅助提取线程加载失败: {}", e.getMessage());
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    memoryBudget.release(documentMb);
+                    break;
+                }
+            }
+
+            job.work(first.document);
+
+            boolean finished;
+            try {
+                finished = job.done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finished = false;
+            }
+            if (!finished) {
+                job.cancelled.set(true);
+                log.error("PDF解析超时: {}, 已完成 {}/{} 个区间", file.getName(),
+                        rangeCount - job.done.getCount(), rangeCount);
+            }
+
+            long length = job.writeTo(out);
+            log.info("PDF解析完成，{} 页 / {} 个区间，长度: {}，耗时: {} ms",
+                    pageCount, rangeCount, length, System.currentTimeMillis() - start);
+            if (job.missingRanges > 0) {
+                throw new ExtractionSink.IncompleteException(
+                        "PDF有 " + job.missingRanges + "/" + rangeCount + " 个区间未能解析");
+            }
+        }
+    }
+
+    /**
+     * 加载一份文档需要的预算：文件大小（估算解析后的对象树）+ 读取缓冲，不超过整个预算
+     */
+    private int reservationMb(File file) {
+        long documentMb = (file.length() + MB - 1) / MB;
+        return (int) Math.min(memoryBudgetMb, Math.max(1, documentMb + Math.max(0, workerMemoryMb)));
+    }
+
+    /**
+     * 阻塞申请预算直到截止时间，超时返回 false
+     */
+    private boolean reserve(int mb, long deadline) {
+        try {
+            long waitMs = Math.max(0, deadline - System.currentTimeMillis());
+            return memoryBudget.tryAcquire(mb, waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 使用已申请的预算加载文档；读取缓冲在预算内最多用 worker-memory-mb，其余写临时文件
+     */
+    private LoadedDocument load(File file, int reservedMb) throws IOException {
+        long bufferMb = Math.min(Math.max(0, workerMemoryMb), reservedMb);
+        MemoryUsageSetting memory = bufferMb > 0
+                ? MemoryUsageSetting.setupMixed(bufferMb * MB)
+                : MemoryUsageSetting.setupTempFileOnly();
+        try {
+            return new LoadedDocument(PDDocument.load(file, memory), reservedMb);
+        } catch (IOException | RuntimeException e) {
+            memoryBudget.release(reservedMb);
+            throw e;
+        }
+    }
+
+    /**
+     * 已加载的文档及其占用的内存预算，关闭时归还
+     */
+    private final class LoadedDocument implements AutoCloseable {
+
+        private final PDDocument document;
+        private final int reservedMb;
+
+        LoadedDocument(PDDocument document, int reservedMb) {
+            this.document = document;
+            this.reservedMb = reservedMb;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                document.close();
+            } finally {
+                memoryBudget.release(reservedMb);
+            }
+        }
+    }
+
+    /**
+     * 区间提取结果；failed 为 true 时 text 是失败占位文字
+     */
+    private record RangeText(String text, boolean failed) {
+    }
+
+    /**
+     * 一次提取任务：区间按序号领取，结果按序号存放
+     *
+     * 超时后调用线程写出结果时，辅助线程可能仍在提取：结果槽位用 AtomicReferenceArray，
+     * 辅助线程只在槽位为空时写入（compareAndSet），writeTo 取走时换成 TAKEN，迟到的结果直接丢弃。
+     */
+    private final class Job {
+
+        private final File file;
+        private final int pageCount;
+        private final int rangeSize;
+        private final AtomicReferenceArray<RangeText> results;
+        private int missingRanges;      // writeTo 时统计的失败或超时区间数（只在调用线程读写）
+        private final AtomicInteger nextRange = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final CountDownLatch done;
+        private final long deadline;
+
+        Job(File file, int pageCount, int rangeSize, int rangeCount, long deadline) {
+            this.file = file;
+            this.pageCount = pageCount;
+            this.rangeSize = rangeSize;
+            this.results = new AtomicReferenceArray<>(rangeCount);
+            this.done = new CountDownLatch(rangeCount);
+            this.deadline = deadline;
+        }
+
+        boolean hasPendingRanges() {
+            return !cancelled.get() && nextRange.get() < results.length();
+        }
+
+        void work(PDDocument document) {
+            int range;
+            while (!cancelled.get() && System.currentTimeMillis() < deadline
+                    && (range = nextRange.getAndIncrement()) < results.length()) {
+                int startPage = range * rangeSize + 1;
+                int endPage = Math.min(pageCount, startPage + rangeSize - 1);
+                RangeText text;
+                try (DownstreamLimiter.Permit permit = downstreamLimiter.acquire(DownstreamLimiter.EXTRACTION)) {
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    stripper.setSortByPosition(true);
+                    stripper.setStartPage(startPage);
+                    stripper.setEndPage(endPage);
+                    text = new RangeText(stripper.getText(document), false);
+                } catch (Exception e) {
+                    log.error("PDF第 {}-{} 页解析失败: {}", startPage, endPage, file.getName(), e);
+                    text = new RangeText("【第 " + startPage + "-" + endPage + " 页解析失败】\n", true);
+                }
+                // 已超时取消的任务不再写入结果
+                if (!cancelled.get()) {
+                    results.compareAndSet(range, null, text);
+                }
+                done.countDown();
+            }
+        }
+
+        /**
+         * 按页序写出，取走该区间的文本并换成 TAKEN（释放文本，之后的写入失败）
+         */
+        long writeTo(Writer out) throws IOException {
+            long length = 0;
+            for (int i = 0; i < results.length(); i++) {
+                RangeText text = results.getAndSet(i, TAKEN);
+                if (text == null || text.failed()) {
+                    missingRanges++;
+                }
+                String part;
+                if (text == null) {
+                    int startPage = i * rangeSize + 1;
+                    int endPage = Math.min(pageCount, startPage + rangeSize - 1);
+                    part = "【第 " + startPage + "-" + endPage + " 页解析超时】\n";
+                } else {
+                    part = text.text();
+                }
+                out.write(part);
+                length += part.length();
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.smartcampus.service.extract;
+
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFShape;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * PPTX：按页输出文本框内容
+ */
+@Component
+public class PptxDocumentExtractor implements DocumentExtractor {
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("pptx");
+    }
+
+    @Override
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        try (InputStream is = source.openStream();
+             XMLSlideShow ppt = new XMLSlideShow(is)) {
+            List<XSLFSlide> slides = ppt.getSlides();
+            for (int i = 0; i < slides.size(); i++) {
+                out.write("=== 第 " + (i + 1) + " 页 ===\n");
+                for (XSLFShape shape : slides.get(i).getShapes()) {
+                    if (shape instanceof XSLFTextShape textShape) {
+                        out.write(textShape.getText());
+                        out.write('\n');
+                    }
+                }
+                out.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.smartcampus.service.extract;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 纯文本：按文件开头的样本判断编码（UTF-8 → GB18030 → ISO-8859-1），再按该编码流式转写
+ *
+ * GB18030 兼容 GBK/GB2312；ISO-8859-1 可解码任意字节，作为最后的兜底。
+ */
+@Slf4j
+@Component
+public class TxtDocumentExtractor implements DocumentExtractor {
+
+    private static final int SAMPLE_BYTES = 64 * 1024;
+    private static final List<Charset> CANDIDATES = List.of(
+            StandardCharsets.UTF_8, Charset.forName("GB18030"), StandardCharsets.ISO_8859_1);
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("txt");
+    }
+
+    @Override
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(source.openStream(), SAMPLE_BYTES)) {
+            in.mark(SAMPLE_BYTES);
+            byte[] sample = in.readNBytes(SAMPLE_BYTES);
+            in.reset();
+
+            Charset charset = detect(sample);
+            log.info("使用编码 {} 解析文件: {}", charset, source.name());
+
+            if (charset == StandardCharsets.UTF_8 && hasUtf8Bom(sample)) {
+                in.skipNBytes(3);
+            }
+            Reader reader = new InputStreamReader(in, charset);
+            reader.transferTo(out);
+        }
+    }
+
+    private Charset detect(byte[] sample) {
+        for (Charset charset : CANDIDATES) {
+            if (decodes(sample, charset)) {
+                return charset;
+            }
+        }
+        return StandardCharsets.ISO_8859_1;
+    }
+
+    /**
+     * 样本能否无错误解码；样本末尾可能截断多字节字符，不按输入结束处理
+     */
+    private boolean decodes(byte[] sample, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer bytes = ByteBuffer.wrap(sample);
+        CharBuffer chars = CharBuffer.allocate(sample.length);
+        CoderResult result = decoder.decode(bytes, chars, false);
+        return !result.isError();
+    }
+
+    private boolean hasUtf8Bom(byte[] sample) {
+        return sample.length >= 3
+                && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF;
+    }
+}
@@ -0,0 +1,82 @@
+package com.smartcampus.service.extract;
+
+import com.smartcampus.utils.XlsxTextExtractor;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * XLS（旧版二进制格式，单表最多 65536 行）：用 HSSFWorkbook 读取，输出套用与 XLSX 相同的行、单元格、字符上限
+ */
+@Component
+public class XlsDocumentExtractor implements DocumentExtractor {
+
+    @Value("${file.extract.excel.max-rows-per-sheet:5000}")
+    private int maxRowsPerSheet;
+
+    @Value("${file.extract.excel.max-cells-per-row:100}")
+    private int maxCellsPerRow;
+
+    @Value("${file.extract.excel.max-chars:200000}")
+    private int maxChars;
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("xls");
+    }
+
+    @Override
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        try (InputStream is = source.openStream();
+             Workbook workbook = new HSSFWorkbook(is)) {
+            DataFormatter formatter = new DataFormatter();
+            long written = 0;
+            boolean truncated = false;
+
+            sheets:
+            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+                Sheet sheet = workbook.getSheetAt(i);
+                out.write("=== 工作表: " + sheet.getSheetName() + " ===\n");
+
+                int rows = 0;
+                for (Row row : sheet) {
+                    if (rows++ >= maxRowsPerSheet) {
+                        truncated = true;
+                        break;
+                    }
+                    int cells = 0;
+                    for (Cell cell : row) {
+                        if (cells++ >= maxCellsPerRow) {
+                            break;
+                        }
+                        String value = formatter.formatCellValue(cell);
+                        if (written + value.length() + 1 > maxChars) {
+                            out.write(value, 0, (int) Math.min(value.length(), maxChars - written));
+                            truncated = true;
+                            break sheets;
+                        }
+                        out.write(value);
+                        out.write('\t');
+                        written += value.length() + 1;
+                    }
+                    out.write('\n');
+                }
+                out.write('\n');
+            }
+
+            if (truncated) {
+                out.write(XlsxTextExtractor.TRUNCATED_NOTE);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.smartcampus.service.extract;
+
+import com.smartcampus.utils.XlsxTextExtractor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * XLSX：SAX 流式逐行读取，峰值内存与工作表大小无关
+ */
+@Component
+public class XlsxDocumentExtractor implements DocumentExtractor {
+
+    @Value("${file.extract.excel.max-rows-per-sheet:5000}")
+    private int maxRowsPerSheet;
+
+    @Value("${file.extract.excel.max-cells-per-row:100}")
+    private int maxCellsPerRow;
+
+    @Value("${file.extract.excel.max-chars:200000}")
+    private int maxChars;
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("xlsx");
+    }
+
+    @Override
+    public void extract(DocumentSource source, Writer out) throws IOException {
+        // 事件模型需要随机访问 zip 条目，上传文件先暂存，避免把整个包读入内存
+        new XlsxTextExtractor(maxRowsPerSheet, maxCellsPerRow, maxChars).extract(source.file(), out);
+    }
+}
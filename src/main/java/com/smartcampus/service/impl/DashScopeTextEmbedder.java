@@ -0,0 +1,52 @@
+package com.smartcampus.service.impl;
+
+import com.smartcampus.service.DownstreamLimiter;
+import com.smartcampus.service.QianWenService;
+import com.smartcampus.service.TextEmbedder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 通义千问向量化实现（text-embedding 系列）
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "ai.embedding.provider", havingValue = "dashscope", matchIfMissing = true)
+public class DashScopeTextEmbedder implements TextEmbedder {
+
+    private final QianWenService qianWenService;
+    private final DownstreamLimiter downstreamLimiter;
+
+    @Value("${ai.embedding.model:text-embedding-v2}")
+    private String model;
+
+    @Value("${ai.embedding.batch-size:25}")
+    private int batchSize;
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        try (DownstreamLimiter.Permit permit = downstreamLimiter.acquire(DownstreamLimiter.EMBEDDING)) {
+            return qianWenService.embedTexts(texts, model).block(Duration.ofSeconds(60));
+        }
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public String modelName() {
+        return model;
+    }
+}
@@ -0,0 +1,88 @@
+package com.smartcampus.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.smartcampus.dto.ConversationTurn;
+import com.smartcampus.service.ConversationMemoryStore;
+import com.smartcampus.utils.CircularBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 进程内短期记忆 - Caffeine 缓存 + 循环缓冲区
+ *
+ * 单实例部署使用；按会话数上限和闲置时间淘汰，淘汰后从数据库按需恢复。
+ * 通过 ai.context.store=local 启用（默认）。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "ai.context.store", havingValue = "local", matchIfMissing = true)
+public class LocalConversationMemoryStore implements ConversationMemoryStore {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.context.max-history:5}")
+    private int maxHistoryTurns;
+
+    @Value("${ai.context.max-sessions:10000}")
+    private long maxSessions;  // 内存中最多保留的会话数
+
+    @Value("${ai.context.session-idle-minutes:30}")
+    private long sessionIdleMinutes;  // 会话闲置过期时间
+
+    // 用户ID:会话ID -> 最近N轮对话
+    private Cache<String, CircularBuffer<ConversationTurn>> sessions;
+
+    @PostConstruct
+    public void initCache() {
+        sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(Duration.ofMinutes(sessionIdleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, sessions, "short-term-memory");
+    }
+
+    /**
+     * 未驻留时在缓存之外查库，再 putIfAbsent：数据库调用不放进 Caffeine 的 compute，
+     * 避免慢查询期间锁住同一哈希桶里的其他会话；并发加载时以先放入的为准
+     */
+    @Override
+    public List<ConversationTurn> getRecentTurns(String sessionKey, Supplier<List<ConversationTurn>> loader) {
+        CircularBuffer<ConversationTurn> buffer = sessions.getIfPresent(sessionKey);
+        if (buffer != null) {
+            return buffer.asList();
+        }
+
+        CircularBuffer<ConversationTurn> loaded = new CircularBuffer<>(maxHistoryTurns);
+        loader.get().forEach(loaded::add);
+        CircularBuffer<ConversationTurn> existing = sessions.asMap().putIfAbsent(sessionKey, loaded);
+        return (existing != null ? existing : loaded).asList();
+    }
+
+    @Override
+    public void appendTurn(String sessionKey, ConversationTurn turn) {
+        CircularBuffer<ConversationTurn> buffer = sessions.getIfPresent(sessionKey);
+        if (buffer == null) {
+            log.debug("短期记忆未驻留，跳过更新: {}", sessionKey);
+            return;
+        }
+        buffer.add(turn);
+    }
+
+    @Override
+    public void clear(String sessionKey) {
+        sessions.invalidate(sessionKey);
+    }
+}
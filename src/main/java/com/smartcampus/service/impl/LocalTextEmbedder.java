@@ -0,0 +1,59 @@
+package com.smartcampus.service.impl;
+
+import com.smartcampus.service.TextEmbedder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地向量化替身 - 字符二元组特征哈希，无需调用远程模型
+ *
+ * 仅用于测试和离线环境：相同文本得到相同向量，字面重叠越多相似度越高，
+ * 不具备语义理解能力。通过 ai.embedding.provider=local 启用。
+ */
+@Service
+@ConditionalOnProperty(name = "ai.embedding.provider", havingValue = "local")
+public class LocalTextEmbedder implements TextEmbedder {
+
+    @Value("${ai.embedding.local-dimension:256}")
+    private int dimension;
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embedOne(text));
+        }
+        return vectors;
+    }
+
+    private float[] embedOne(String text) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            vector[Math.floorMod(c * 31, dimension)] += 0.5f;
+            if (i + 1 < text.length()) {
+                int hash = c * 31 + text.charAt(i + 1);
+                // 符号哈希，减少桶冲突带来的系统性偏差
+                vector[Math.floorMod(hash * 0x9E3779B1, dimension)] += (hash & 1) == 0 ? 1f : -1f;
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return 256;
+    }
+
+    @Override
+    public String modelName() {
+        return "local-hash-" + dimension;
+    }
+}
@@ -0,0 +1,166 @@
+package com.smartcampus.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartcampus.dto.ConversationTurn;
+import com.smartcampus.service.ConversationMemoryStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Redis 短期记忆 - 每个会话一个定长列表，多实例共享
+ *
+ * 键为 ai:ctx:{用户ID}:{会话ID}，列表按时间正序保存 JSON 序列化的对话轮次，
+ * 写入后 LTRIM 到最近N轮；读写都在一次管道往返内完成并刷新 TTL。
+ * 通过 ai.context.store=redis 启用。
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "ai.context.store", havingValue = "redis")
+public class RedisConversationMemoryStore implements ConversationMemoryStore {
+
+    private static final String KEY_PREFIX = "ai:ctx:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ai.context.max-history:5}")
+    private int maxHistoryTurns;
+
+    @Value("${ai.context.session-idle-minutes:30}")
+    private long sessionIdleMinutes;  // 会话闲置过期时间
+
+    @Override
+    public List<ConversationTurn> getRecentTurns(String sessionKey, Supplier<List<ConversationTurn>> loader) {
+        String key = KEY_PREFIX + sessionKey;
+        long ttlSeconds = ttlSeconds();
+
+        List<String> cached;
+        try {
+            // LRANGE + EXPIRE 一次往返
+            List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.lRange(key, 0, -1);
+                conn.expire(key, ttlSeconds);
+                return null;
+            });
+            cached = castList(replies.get(0));
+        } catch (Exception e) {
+            log.warn("读取Redis短期记忆失败，回退数据库: {}, error={}", key, e.getMessage());
+            return loader.get();
+        }
+
+        if (cached != null && !cached.isEmpty()) {
+            List<ConversationTurn> turns = new ArrayList<>(cached.size());
+            for (String json : cached) {
+                ConversationTurn turn = deserialize(json);
+                if (turn != null) {
+                    turns.add(turn);
+                }
+            }
+            return turns;
+        }
+
+        List<ConversationTurn> loaded = loader.get();
+        if (!loaded.isEmpty()) {
+            store(key, loaded, ttlSeconds);
+        }
+        return loaded;
+    }
+
+    @Override
+    public void appendTurn(String sessionKey, ConversationTurn turn) {
+        String key = KEY_PREFIX + sessionKey;
+        String json = serialize(turn);
+        if (json == null) {
+            return;
+        }
+        long ttlSeconds = ttlSeconds();
+
+        try {
+            // 键不存在时不重建（RPUSHX），下一次读取会从数据库恢复
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.rPushX(key, json);
+                conn.lTrim(key, -maxHistoryTurns, -1);
+                conn.expire(key, ttlSeconds);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入Redis短期记忆失败: {}, error={}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void clear(String sessionKey) {
+        try {
+            redisTemplate.delete(KEY_PREFIX + sessionKey);
+        } catch (Exception e) {
+            log.warn("清理Redis短期记忆失败: {}, error={}", sessionKey, e.getMessage());
+        }
+    }
+
+    private void store(String key, List<ConversationTurn> turns, long ttlSeconds) {
+        List<String> values = new ArrayList<>(turns.size());
+        for (ConversationTurn turn : turns) {
+            String json = serialize(turn);
+            if (json != null) {
+                values.add(json);
+            }
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.del(key);
+                conn.rPush(key, values.toArray(new String[0]));
+                conn.lTrim(key, -maxHistoryTurns, -1);
+                conn.expire(key, ttlSeconds);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("回写Redis短期记忆失败: {}, error={}", key, e.getMessage());
+        }
+    }
+
+    private long ttlSeconds() {
+        return sessionIdleMinutes * 60;
+    }
+
+    private String serialize(ConversationTurn turn) {
+        try {
+            return objectMapper.writeValueAsString(turn);
+        } catch (JsonProcessingException e) {
+            log.warn("序列化对话轮次失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private ConversationTurn deserialize(String json) {
+        try {
+            return objectMapper.readValue(json, ConversationTurn.class);
+        } catch (JsonProcessingException e) {
+            log.warn("反序列化对话轮次失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> castList(Object reply) {
+        return reply instanceof List<?> list ? (List<String>) list : null;
+    }
+}
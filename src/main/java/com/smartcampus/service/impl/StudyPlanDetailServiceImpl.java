@@ -4,16 +4,20 @@ import com.smartcampus.dao.StudyPlanDao;
 import com.smartcampus.entity.StudyPlanDetail;
 import com.smartcampus.exception.BusinessException;
 import com.smartcampus.repository.StudyPlanDetailRepository;
+import com.smartcampus.service.ModelRouter;
 import com.smartcampus.service.QianWenService;
 import com.smartcampus.service.StudyPlanDetailService;
+import com.smartcampus.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -24,12 +28,26 @@ public class StudyPlanDetailServiceImpl implements StudyPlanDetailService {
     private final QianWenService qianWenService;
     private final StudyPlanDetailRepository studyPlanDetailRepository;
     private final StudyPlanDao studyPlanDao;
+    private final TransactionTemplate transactionTemplate;
 
+    // 同一计划、相同参数的并发生成（重复点击）共享一次AI调用和一条详情记录
+    private final SingleFlight<List<Object>, Map<String, Object>> inFlight = new SingleFlight<>();
+
+    /**
+     * 请求合并在事务之外：等待者不占数据库连接，领头者写入提交后才释放合并键，
+     * 之后到达的重复请求不会在提交前再插入一条；AI 调用期间也不持有事务
+     */
     @Override
-    @Transactional
     public Map<String, Object> createPlanDetailForUser(String title, Long studyPlanId,
                                                        String subject, String duration,
                                                        String level) throws Exception {
+        return inFlight.execute(Arrays.asList(studyPlanId, title, subject, duration, level),
+                () -> generatePlanDetail(title, studyPlanId, subject, duration, level));
+    }
+
+    private Map<String, Object> generatePlanDetail(String title, Long studyPlanId,
+                                                   String subject, String duration,
+                                                   String level) throws Exception {
         log.info("开始为学习计划生成详情: title={}, studyPlanId={}, subject={}, duration={}, level={}",
                 title, studyPlanId, subject, duration, level);
 
@@ -50,16 +68,26 @@ public class StudyPlanDetailServiceImpl implements StudyPlanDetailService {
             throw new Exception("AI服务调用失败: " + e.getMessage());
         }
 
+        // 3. 在单独的事务中确认计划仍存在并保存
+        final String finalPlanText = planText;
+        Map<String, Object> result = transactionTemplate.execute(status ->
+                saveDetail(studyPlanId, duration, level, finalPlanText));
+        if (result.get("detailId") != null) {
+            log.info("计划详情生成并保存成功，detailId: {}", result.get("detailId"));
+        }
+        return result;
+    }
+
+    private Map<String, Object> saveDetail(Long studyPlanId, String duration, String level, String planText) {
+        Map<String, Object> result = new HashMap<>();
         if (!studyPlanDao.existsById(Math.toIntExact(studyPlanId))) {
             log.info("学习计划已被删除，放弃保存生成的详情 - studyPlanId: {}", studyPlanId);
-            Map<String, Object> result = new HashMap<>();
             result.put("plan", null);
             result.put("detailId", null);
             result.put("cancelled", true);
             return result;
         }
 
-        // 3. 保存到数据库
         StudyPlanDetail detail = new StudyPlanDetail();
         detail.setStudyPlanId(Math.toIntExact(studyPlanId));
         detail.setDuration(duration);
@@ -70,11 +98,8 @@ public class StudyPlanDetailServiceImpl implements StudyPlanDetailService {
         StudyPlanDetail savedDetail = studyPlanDetailRepository.save(detail);
 
         // 4. 返回数据
-        Map<String, Object> result = new HashMap<>();
         result.put("plan", planText);
         result.put("detailId", savedDetail.getId());
-
-        log.info("计划详情生成并保存成功，detailId: {}", savedDetail.getId());
         return result;
     }
 
@@ -141,8 +166,8 @@ public class StudyPlanDetailServiceImpl implements StudyPlanDetailService {
     private String callAIService(String prompt) throws Exception {
         try {
             log.info("正在调用AI服务...");
-            return qianWenService.askQuestion(prompt, Collections.emptyList(), "qwen-max")
-                    .block(java.time.Duration.ofSeconds(120));
+            return qianWenService.askQuestionBlocking(prompt, Collections.emptyList(),
+                    ModelRouter.Task.STUDY_PLAN, java.time.Duration.ofSeconds(120));
         } catch (Exception e) {
             log.error("调用AI服务失败: {}", e.getMessage(), e);
             throw new Exception("AI服务调用失败: " + e.getMessage());
@@ -25,6 +25,7 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Service
@@ -35,6 +36,7 @@ public class StudyPlanServiceImpl implements StudyPlanService {
     private final StudyTaskService studyTaskService;
     private final StudyPlanDetailRepository studyPlanDetailRepository;
     private final ReviewSuggestionDao reviewSuggestionDao;
+    private final ExecutorService aiTaskExecutor;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     /**
      * 校验日期格式
@@ -315,7 +317,7 @@ public class StudyPlanServiceImpl implements StudyPlanService {
             } catch (Exception e) {
                 log.error("第一次复习任务生成失败", e);
             }
-        });
+        }, aiTaskExecutor);
 
         return studyPlanDao.save(plan);
     }
@@ -1,9 +1,11 @@
 package com.smartcampus.service.impl;
 
 import com.smartcampus.dto.ApiResponse;
+import com.smartcampus.service.ModelRouter;
 import com.smartcampus.service.QianWenService;
 import com.smartcampus.service.StudyStatisticsService;
 import com.smartcampus.service.StudySuggestionService;
+import com.smartcampus.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -11,6 +13,7 @@ import org.springframework.stereotype.Service;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 /**
  * 学习建议服务实现类
@@ -22,9 +25,23 @@ public class StudySuggestionServiceImpl implements StudySuggestionService {
 
     private final StudyStatisticsService studyStatisticsService;
     private final QianWenService qianWenService;
+    private final ExecutorService aiTaskExecutor;
+
+    // 同一用户、同一时间范围的并发请求（重复点击、同步/异步接口同时轮询）只生成一次
+    private final SingleFlight<List<Object>, ApiResponse> inFlight = new SingleFlight<>();
 
     @Override
     public ApiResponse getStudySuggestions(Integer userId, String timeRange) {
+        try {
+            return inFlight.execute(Arrays.asList(userId, timeRange),
+                    () -> generateStudySuggestions(userId, timeRange));
+        } catch (Exception e) {
+            log.error("生成学习建议失败", e);
+            return ApiResponse.error(500, "生成学习建议失败: " + e.getMessage());
+        }
+    }
+
+    private ApiResponse generateStudySuggestions(Integer userId, String timeRange) {
         log.info("开始获取学习建议: userId={}, timeRange={}", userId, timeRange);
 
         try {
@@ -37,8 +54,8 @@ public class StudySuggestionServiceImpl implements StudySuggestionService {
             log.info("AI提示词构建完成，长度: {}", prompt.length());
 
             // 3. 调用 AI 生成建议
-            String aiResponse = qianWenService.askQuestion(prompt, Collections.emptyList(), "qwen-max")
-                    .block(Duration.ofSeconds(90));
+            String aiResponse = qianWenService.askQuestionBlocking(prompt, Collections.emptyList(),
+                    ModelRouter.Task.STUDY_SUGGESTION, Duration.ofSeconds(90));
 
             log.info("AI响应长度: {}", aiResponse != null ? aiResponse.length() : 0);
 
@@ -61,7 +78,7 @@ public class StudySuggestionServiceImpl implements StudySuggestionService {
     public CompletableFuture<ApiResponse> getStudySuggestionsAsync(Integer userId, String timeRange) {
         log.info("异步获取学习建议: userId={}, timeRange={}", userId, timeRange);
 
-        return CompletableFuture.supplyAsync(() -> getStudySuggestions(userId, timeRange));
+        return CompletableFuture.supplyAsync(() -> getStudySuggestions(userId, timeRange), aiTaskExecutor);
     }
 
     /**
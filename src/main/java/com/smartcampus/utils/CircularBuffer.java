@@ -0,0 +1,46 @@
+package com.smartcampus.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 循环缓冲区 - 固定容量，写满后覆盖最旧元素
+ */
+public class CircularBuffer<T> {
+    private final List<T> buffer;
+    private final int maxSize;
+    private int head = 0;
+    private int size = 0;
+
+    public CircularBuffer(int maxSize) {
+        this.maxSize = maxSize;
+        this.buffer = new ArrayList<>(maxSize);
+        for (int i = 0; i < maxSize; i++) {
+            buffer.add(null);
+        }
+    }
+
+    public synchronized void add(T item) {
+        buffer.set(head, item);
+        head = (head + 1) % maxSize;
+        if (size < maxSize) {
+            size++;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized List<T> asList() {
+        List<T> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = (head - size + i + maxSize) % maxSize;
+            T item = buffer.get(index);
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,158 @@
+package com.smartcampus.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 暴力扫描向量索引 - 只存归一化后的向量和外部ID，不建图
+ *
+ * 用于单个文件这类几十到几百条的小集合：每条只占 dimension * 4 字节，
+ * 检索时逐条点积，结果精确；不适合大集合（大集合用 HnswIndex）。
+ */
+public class FlatVectorIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int dimension = -1;
+    private int size;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private float[] vectors;
+
+    /**
+     * 插入或替换向量
+     */
+    public void add(long key, float[] vector) {
+        float[] normalized = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = normalized.length;
+                vectors = new float[keys.length * dimension];
+            } else if (normalized.length != dimension) {
+                throw new IllegalArgumentException("向量维度不一致: 期望 " + dimension + "，实际 " + normalized.length);
+            }
+            int slot = indexOf(key);
+            if (slot < 0) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    vectors = Arrays.copyOf(vectors, size * 2 * dimension);
+                }
+                slot = size++;
+                keys[slot] = key;
+            }
+            System.arraycopy(normalized, 0, vectors, slot * dimension, dimension);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除向量（末尾元素挪到空位）
+     */
+    public boolean remove(long key) {
+        lock.writeLock().lock();
+        try {
+            int slot = indexOf(key);
+            if (slot < 0) {
+                return false;
+            }
+            int last = --size;
+            if (slot != last) {
+                keys[slot] = keys[last];
+                System.arraycopy(vectors, last * dimension, vectors, slot * dimension, dimension);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 精确 top-k 检索，按相似度降序
+     */
+    public List<HnswIndex.Result> search(float[] query, int k) {
+        float[] q = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (size == 0 || k <= 0) {
+                return new ArrayList<>();
+            }
+            if (q.length != dimension) {
+                throw new IllegalArgumentException("向量维度不一致: 期望 " + dimension + "，实际 " + q.length);
+            }
+
+            // 小顶堆保留当前最相似的 k 条
+            PriorityQueue<HnswIndex.Result> top = new PriorityQueue<>(
+                    k + 1, (a, b) -> Float.compare(a.score(), b.score()));
+            for (int i = 0; i < size; i++) {
+                top.offer(new HnswIndex.Result(keys[i], dot(q, i * dimension)));
+                if (top.size() > k) {
+                    top.poll();
+                }
+            }
+            List<HnswIndex.Result> results = new ArrayList<>(top);
+            results.sort((a, b) -> Float.compare(b.score(), a.score()));
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int indexOf(long key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private float dot(float[] q, int offset) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < dimension; i += 4) {
+            s0 += q[i] * vectors[offset + i];
+            s1 += q[i + 1] * vectors[offset + i + 1];
+            s2 += q[i + 2] * vectors[offset + i + 2];
+            s3 += q[i + 3] * vectors[offset + i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += q[i] * vectors[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inv;
+        }
+        return result;
+    }
+}
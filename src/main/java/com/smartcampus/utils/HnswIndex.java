@@ -0,0 +1,569 @@
+package com.smartcampus.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * HNSW（分层可导航小世界图）近似最近邻索引
+ *
+ * 向量预先归一化后按行平铺存储在一个 float[] 中，余弦相似度退化为点积；
+ * 邻接表同样使用 int[] 存储（下标0为邻居数量），避免装箱对象。
+ * 查询在读锁下并发执行，插入/删除在写锁下串行执行；
+ * 删除采用墓碑标记，墓碑过半时整体重建。
+ */
+public class HnswIndex {
+
+    /**
+     * 检索结果：外部ID + 余弦相似度
+     */
+    public record Result(long key, float score) {
+    }
+
+    // 初始只分配少量节点，之后按需翻倍（小索引不预占上 MB 的向量数组）
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int dimension = -1;
+    private int capacity;
+    private int nodeCount;      // 已分配节点数（含墓碑）
+    private int deletedCount;
+    private float[] vectors;
+    private long[] keys;
+    private int[] levels;
+    private int[][][] links;    // links[node][layer] = [邻居数, n1, n2, ...]
+    private BitSet deleted;
+    private final Map<Long, Integer> keyToNode = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int m, int efConstruction) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW 参数 m 必须 >= 2");
+        }
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1.0 / Math.log(m);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * 插入或替换向量
+     */
+    public void add(long key, float[] vector) {
+        float[] normalized = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = normalized.length;
+                vectors = new float[capacity * dimension];
+            } else if (normalized.length != dimension) {
+                throw new IllegalArgumentException("向量维度不一致: 期望 " + dimension + "，实际 " + normalized.length);
+            }
+            Integer old = keyToNode.remove(key);
+            if (old != null) {
+                markDeleted(old);
+            }
+            insert(key, normalized);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除向量
+     */
+    public boolean remove(long key) {
+        lock.writeLock().lock();
+        try {
+            Integer node = keyToNode.remove(key);
+            if (node == null) {
+                return false;
+            }
+            markDeleted(node);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(long key) {
+        lock.readLock().lock();
+        try {
+            return keyToNode.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keyToNode.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 近似 top-k 检索
+     *
+     * @param query  查询向量（无需归一化）
+     * @param k      返回条数
+     * @param ef     搜索宽度，越大召回越高
+     * @param filter 结果过滤条件（可选），只影响结果集，不影响图遍历
+     */
+    public List<Result> search(float[] query, int k, int ef, LongPredicate filter) {
+        float[] q = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            checkDimension(q);
+
+            int ep = entryPoint;
+            for (int layer = maxLevel; layer > 0; layer--) {
+                ep = greedyClosest(q, ep, layer);
+            }
+            IntPredicate accept = node -> !deleted.get(node) && (filter == null || filter.test(keys[node]));
+            NodeHeap results = searchLayer(q, ep, Math.max(ef, k), 0, accept);
+            return drain(results, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 暴力精确检索（用于小索引：节点数不超过搜索宽度时比图遍历更快且无召回损失）
+     */
+    public List<Result> exactSearch(float[] query, int k) {
+        float[] q = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            checkDimension(q);
+
+            NodeHeap results = new NodeHeap(true, k + 1);
+            for (int node = 0; node < nodeCount; node++) {
+                if (deleted.get(node)) {
+                    continue;
+                }
+                results.push(distance(q, node), node);
+                if (results.size() > k) {
+                    results.pop();
+                }
+            }
+            return drain(results, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 构建 ====================
+
+    private void insert(long key, float[] q) {
+        ensureCapacity(nodeCount + 1);
+        int node = nodeCount++;
+        System.arraycopy(q, 0, vectors, node * dimension, dimension);
+        int level = randomLevel();
+        keys[node] = key;
+        levels[node] = level;
+        links[node] = new int[level + 1][];
+        for (int layer = 0; layer <= level; layer++) {
+            links[node][layer] = new int[1 + maxConnections(layer)];
+        }
+        keyToNode.put(key, node);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int ep = entryPoint;
+        for (int layer = maxLevel; layer > level; layer--) {
+            ep = greedyClosest(q, ep, layer);
+        }
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            NodeHeap candidates = searchLayer(q, ep, efConstruction, layer, null);
+            int size = candidates.size();
+            int[] ids = new int[size];
+            float[] dists = new float[size];
+            for (int i = size - 1; i >= 0; i--) {
+                dists[i] = candidates.peekDist();
+                ids[i] = candidates.pop();
+            }
+            ep = ids[0];
+
+            int[] selected = selectNeighbors(ids, dists, size, maxConnections(layer));
+            int[] own = links[node][layer];
+            for (int neighbor : selected) {
+                own[++own[0]] = neighbor;
+                connect(neighbor, node, layer);
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 为已有节点追加邻居，满员时按启发式重新裁剪
+     */
+    private void connect(int node, int neighbor, int layer) {
+        int[] list = links[node][layer];
+        int max = list.length - 1;
+        if (list[0] < max) {
+            list[++list[0]] = neighbor;
+            return;
+        }
+
+        int size = max + 1;
+        int[] ids = new int[size];
+        float[] dists = new float[size];
+        for (int i = 0; i < max; i++) {
+            ids[i] = list[i + 1];
+            dists[i] = distanceBetween(node, ids[i]);
+        }
+        ids[max] = neighbor;
+        dists[max] = distanceBetween(node, neighbor);
+        sortByDistance(ids, dists, size);
+
+        int[] selected = selectNeighbors(ids, dists, size, max);
+        list[0] = selected.length;
+        System.arraycopy(selected, 0, list, 1, selected.length);
+    }
+
+    /**
+     * 启发式邻居选择：候选点比已选邻居更接近基准点时才保留，保证图的多样性
+     * ids/dists 需按距离升序
+     */
+    private int[] selectNeighbors(int[] ids, float[] dists, int size, int maxConn) {
+        int[] selected = new int[Math.min(size, maxConn)];
+        int count = 0;
+        for (int i = 0; i < size && count < selected.length; i++) {
+            int candidate = ids[i];
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                if (distanceBetween(candidate, selected[j]) < dists[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void markDeleted(int node) {
+        if (!deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    /**
+     * 墓碑过半时重建索引，回收内存并恢复图质量
+     */
+    private void compactIfNeeded() {
+        if (nodeCount < MIN_COMPACT_SIZE || deletedCount * 2 < nodeCount) {
+            return;
+        }
+        int live = nodeCount - deletedCount;
+        long[] liveKeys = new long[live];
+        float[] liveVectors = new float[live * dimension];
+        int idx = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (!deleted.get(node)) {
+                liveKeys[idx] = keys[node];
+                System.arraycopy(vectors, node * dimension, liveVectors, idx * dimension, dimension);
+                idx++;
+            }
+        }
+
+        allocate(Math.max(INITIAL_CAPACITY, live + live / 2));
+        vectors = new float[capacity * dimension];
+        keyToNode.clear();
+        nodeCount = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        for (int i = 0; i < live; i++) {
+            insert(liveKeys[i], Arrays.copyOfRange(liveVectors, i * dimension, (i + 1) * dimension));
+        }
+    }
+
+    // ==================== 检索 ====================
+
+    private int greedyClosest(float[] q, int ep, int layer) {
+        int current = ep;
+        float currentDist = distance(q, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbors = links[current][layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int candidate = neighbors[i];
+                float d = distance(q, candidate);
+                if (d < currentDist) {
+                    currentDist = d;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层束搜索，返回大顶堆（堆顶为当前最差结果）
+     */
+    private NodeHeap searchLayer(float[] q, int ep, int ef, int layer, IntPredicate accept) {
+        BitSet visited = new BitSet(nodeCount);
+        NodeHeap candidates = new NodeHeap(false, ef * 2);
+        NodeHeap results = new NodeHeap(true, ef + 1);
+
+        float d = distance(q, ep);
+        visited.set(ep);
+        candidates.push(d, ep);
+        if (accept == null || accept.test(ep)) {
+            results.push(d, ep);
+        }
+
+        while (candidates.size() > 0) {
+            float candidateDist = candidates.peekDist();
+            if (results.size() >= ef && candidateDist > results.peekDist()) {
+                break;
+            }
+            int current = candidates.pop();
+            int[] neighbors = links[current][layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float nd = distance(q, neighbor);
+                if (results.size() < ef || nd < results.peekDist()) {
+                    candidates.push(nd, neighbor);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(nd, neighbor);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private List<Result> drain(NodeHeap results, int k) {
+        while (results.size() > k) {
+            results.pop();
+        }
+        Result[] ordered = new Result[results.size()];
+        for (int i = ordered.length - 1; i >= 0; i--) {
+            float d = results.peekDist();
+            int node = results.pop();
+            ordered[i] = new Result(keys[node], 1.0f - d);
+        }
+        return new ArrayList<>(Arrays.asList(ordered));
+    }
+
+    // ==================== 工具方法 ====================
+
+    private int maxConnections(int layer) {
+        return layer == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private float distance(float[] q, int node) {
+        return 1.0f - dot(q, 0, vectors, node * dimension, dimension);
+    }
+
+    private float distanceBetween(int a, int b) {
+        return 1.0f - dot(vectors, a * dimension, vectors, b * dimension, dimension);
+    }
+
+    /**
+     * 点积：四路累加器展开，打破浮点加法的串行依赖，便于 JIT 流水线化
+     */
+    private static float dot(float[] a, int offsetA, float[] b, int offsetB, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = length & ~3;
+        for (; i < bound; i += 4) {
+            s0 += a[offsetA + i] * b[offsetB + i];
+            s1 += a[offsetA + i + 1] * b[offsetB + i + 1];
+            s2 += a[offsetA + i + 2] * b[offsetB + i + 2];
+            s3 += a[offsetA + i + 3] * b[offsetB + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[offsetA + i] * b[offsetB + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private void checkDimension(float[] q) {
+        if (q.length != dimension) {
+            throw new IllegalArgumentException("向量维度不一致: 期望 " + dimension + "，实际 " + q.length);
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inv;
+        }
+        return result;
+    }
+
+    private static void sortByDistance(int[] ids, float[] dists, int size) {
+        for (int i = 1; i < size; i++) {
+            float d = dists[i];
+            int id = ids[i];
+            int j = i - 1;
+            while (j >= 0 && dists[j] > d) {
+                dists[j + 1] = dists[j];
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            dists[j + 1] = d;
+            ids[j + 1] = id;
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        keys = new long[newCapacity];
+        levels = new int[newCapacity];
+        links = new int[newCapacity][][];
+        deleted = new BitSet(newCapacity);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(required, capacity * 2);
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        keys = Arrays.copyOf(keys, newCapacity);
+        levels = Arrays.copyOf(levels, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+        capacity = newCapacity;
+    }
+
+    /**
+     * (距离, 节点) 二叉堆，max=true 为大顶堆
+     */
+    private static final class NodeHeap {
+        private final boolean max;
+        private float[] dists;
+        private int[] ids;
+        private int size;
+
+        NodeHeap(boolean max, int initialCapacity) {
+            this.max = max;
+            this.dists = new float[Math.max(initialCapacity, 4)];
+            this.ids = new int[dists.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekDist() {
+            return dists[0];
+        }
+
+        void push(float d, int id) {
+            if (size == dists.length) {
+                dists = Arrays.copyOf(dists, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(d, dists[parent])) {
+                    break;
+                }
+                dists[i] = dists[parent];
+                ids[i] = ids[parent];
+                i = parent;
+            }
+            dists[i] = d;
+            ids[i] = id;
+        }
+
+        int pop() {
+            int top = ids[0];
+            size--;
+            if (size > 0) {
+                float d = dists[size];
+                int id = ids[size];
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    int right = child + 1;
+                    if (right < size && before(dists[right], dists[child])) {
+                        child = right;
+                    }
+                    if (!before(dists[child], d)) {
+                        break;
+                    }
+                    dists[i] = dists[child];
+                    ids[i] = ids[child];
+                    i = child;
+                }
+                dists[i] = d;
+                ids[i] = id;
+            }
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
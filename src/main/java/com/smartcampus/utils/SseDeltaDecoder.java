@@ -0,0 +1,225 @@
+package com.smartcampus.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流式对话 SSE 增量解码器 - 把上游字节流直接解码为增量事件
+ *
+ * 按行切分 SSE 帧，只处理 "data:" 行；JSON 用 Jackson 流式 JsonParser 在行缓冲区上原地解析，
+ * 只取 choices[0].delta.content、choices[0].finish_reason 和 usage，其余字段跳过，
+ * 不构建 JsonNode 树，也不为整行创建字符串。
+ *
+ * 解码器有状态（跨 DataBuffer 的半行），每个流使用一个实例，非线程安全。
+ */
+public class SseDeltaDecoder {
+
+    /**
+     * 增量事件：文本增量、结束原因、用量（后两者只在对应分块出现），done 表示收到 [DONE]
+     */
+    public record Delta(String content, String finishReason, Usage usage, boolean done) {
+
+        public static final Delta DONE = new Delta(null, null, null, true);
+
+        public boolean hasContent() {
+            return content != null && !content.isEmpty();
+        }
+    }
+
+    /**
+     * token 用量
+     */
+    public record Usage(int promptTokens, int completionTokens, int totalTokens) {
+    }
+
+    // JsonFactory 线程安全，内部回收解析缓冲区
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE_MARKER = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] readBuffer = new byte[8192];
+    private byte[] line = new byte[1024];
+    private int lineLength = 0;
+
+    /**
+     * 解码一个数据块，返回其中完整行产生的事件（不释放 buffer）
+     */
+    public List<Delta> decode(DataBuffer buffer) {
+        List<Delta> events = null;
+        int remaining;
+        while ((remaining = buffer.readableByteCount()) > 0) {
+            int n = Math.min(remaining, readBuffer.length);
+            buffer.read(readBuffer, 0, n);
+            for (int i = 0; i < n; i++) {
+                byte b = readBuffer[i];
+                if (b == '\n') {
+                    Delta delta = processLine();
+                    if (delta != null) {
+                        if (events == null) {
+                            events = new ArrayList<>(4);
+                        }
+                        events.add(delta);
+                    }
+                } else if (b != '\r') {
+                    append(b);
+                }
+            }
+        }
+        return events != null ? events : List.of();
+    }
+
+    /**
+     * 流结束时处理最后一个没有换行结尾的行
+     */
+    public List<Delta> flush() {
+        Delta delta = processLine();
+        return delta != null ? List.of(delta) : List.of();
+    }
+
+    private void append(byte b) {
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = b;
+    }
+
+    private Delta processLine() {
+        int length = lineLength;
+        lineLength = 0;
+        if (length < DATA_PREFIX.length || !startsWith(line, 0, length, DATA_PREFIX)) {
+            // 空行（事件分隔）、注释、event:/id: 行
+            return null;
+        }
+
+        int offset = DATA_PREFIX.length;
+        if (offset < length && line[offset] == ' ') {
+            offset++;
+        }
+        int dataLength = length - offset;
+        if (dataLength == 0) {
+            return null;
+        }
+        if (dataLength == DONE_MARKER.length && startsWith(line, offset, length, DONE_MARKER)) {
+            return Delta.DONE;
+        }
+        return parse(line, offset, dataLength);
+    }
+
+    /**
+     * 解析一个数据帧：{"choices":[{"delta":{"content":"..."},"finish_reason":null}],"usage":{...}}
+     */
+    static Delta parse(byte[] data, int offset, int length) {
+        String content = null;
+        String finishReason = null;
+        Usage usage = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    // 只取第一个 choice
+                    JsonToken first = parser.nextToken();
+                    if (first == JsonToken.END_ARRAY) {
+                        continue;
+                    }
+                    if (first == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String choiceField = parser.currentName();
+                            JsonToken choiceValue = parser.nextToken();
+                            if ("delta".equals(choiceField) && choiceValue == JsonToken.START_OBJECT) {
+                                content = readContent(parser);
+                            } else if ("finish_reason".equals(choiceField) && choiceValue == JsonToken.VALUE_STRING) {
+                                finishReason = parser.getText();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                    skipRestOfArray(parser);
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    usage = readUsage(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            // 非 JSON 数据帧（如错误文本），忽略
+            return null;
+        }
+
+        if (content == null && finishReason == null && usage == null) {
+            return null;
+        }
+        return new Delta(content, finishReason, usage, false);
+    }
+
+    private static String readContent(JsonParser parser) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    private static Usage readUsage(JsonParser parser) throws IOException {
+        int prompt = 0;
+        int completion = 0;
+        int total = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NUMBER_INT) {
+                switch (field) {
+                    case "prompt_tokens", "input_tokens" -> prompt = parser.getIntValue();
+                    case "completion_tokens", "output_tokens" -> completion = parser.getIntValue();
+                    case "total_tokens" -> total = parser.getIntValue();
+                    default -> {
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Usage(prompt, completion, total > 0 ? total : prompt + completion);
+    }
+
+    private static void skipRestOfArray(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, int end, byte[] prefix) {
+        if (end - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+package com.smartcampus.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 流式文本分块器 - 从 Reader 增量读取，按固定长度切分并保留重叠
+ *
+ * 切分点优先落在段落/句子边界（在块尾部 1/5 范围内回溯查找），
+ * 内存中只保留一个块大小的缓冲区，不需要整篇文本。
+ */
+public class TextChunker implements Iterator<TextChunker.Chunk> {
+
+    /**
+     * 文本块：序号、在原文中的起始偏移、内容
+     */
+    public record Chunk(int index, long offset, String text) {
+    }
+
+    private static final String BOUNDARIES = "\n。！？；.!?;";
+
+    private final Reader reader;
+    private final int chunkSize;
+    private final int overlap;
+    private final char[] readBuffer = new char[4096];
+    private final StringBuilder buffer = new StringBuilder();
+
+    private long bufferOffset = 0;  // buffer[0] 在原文中的偏移
+    private int carried = 0;        // buffer 开头属于上一块重叠部分的字符数
+    private boolean eof = false;
+    private int nextIndex = 0;
+    private Chunk next;
+
+    public TextChunker(Reader reader, int chunkSize, int overlap) {
+        if (chunkSize <= 0 || overlap < 0 || overlap >= chunkSize) {
+            throw new IllegalArgumentException("分块参数非法: chunkSize=" + chunkSize + ", overlap=" + overlap);
+        }
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.overlap = overlap;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Chunk next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Chunk chunk = next;
+        next = null;
+        return chunk;
+    }
+
+    private Chunk advance() {
+        while (true) {
+            fill();
+            if (buffer.length() <= carried) {
+                return null;
+            }
+
+            int cut = buffer.length() <= chunkSize ? buffer.length() : findCut();
+            String text = buffer.substring(0, cut);
+            long offset = bufferOffset;
+
+            // 保留尾部重叠，最后一块不再保留
+            int keep = eof && cut == buffer.length() ? 0 : Math.min(overlap, cut - 1);
+            int drop = cut - keep;
+            buffer.delete(0, drop);
+            bufferOffset += drop;
+            carried = keep;
+
+            if (!text.isBlank()) {
+                return new Chunk(nextIndex++, offset, text.strip());
+            }
+        }
+    }
+
+    /**
+     * 在 [chunkSize*4/5, chunkSize] 范围内从后向前寻找边界，找不到则硬切
+     */
+    private int findCut() {
+        int lowerBound = Math.max(carried + 1, chunkSize - chunkSize / 5);
+        for (int i = chunkSize - 1; i >= lowerBound; i--) {
+            if (BOUNDARIES.indexOf(buffer.charAt(i)) >= 0) {
+                return i + 1;
+            }
+        }
+        return chunkSize;
+    }
+
+    private void fill() {
+        try {
+            while (!eof && buffer.length() <= chunkSize) {
+                int n = reader.read(readBuffer);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    buffer.append(readBuffer, 0, n);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取文本失败", e);
+        }
+    }
+}
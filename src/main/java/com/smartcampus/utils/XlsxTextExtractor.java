@@ -0,0 +1,181 @@
+package com.smartcampus.utils;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * 流式 XLSX 文本提取器 - 基于 POI 事件模型（XSSFReader + SAX），逐行读取工作表
+ *
+ * 不构建 XSSFWorkbook，内存中只有共享字符串表，单元格文本直接写入输出；每个工作表最多读取 maxRowsPerSheet 行，
+ * 每行最多 maxCellsPerRow 个单元格，输出达到 maxChars 后立即停止解析，不再读取剩余工作表。
+ */
+public class XlsxTextExtractor {
+
+    public static final String TRUNCATED_NOTE = "\n...(表格内容过长，已截断)";
+
+    private final int maxRowsPerSheet;
+    private final int maxCellsPerRow;
+    private final int maxChars;
+
+    public XlsxTextExtractor(int maxRowsPerSheet, int maxCellsPerRow, int maxChars) {
+        if (maxRowsPerSheet <= 0 || maxCellsPerRow <= 0 || maxChars <= 0) {
+            throw new IllegalArgumentException("表格提取上限非法: rows=" + maxRowsPerSheet
+                    + ", cells=" + maxCellsPerRow + ", chars=" + maxChars);
+        }
+        this.maxRowsPerSheet = maxRowsPerSheet;
+        this.maxCellsPerRow = maxCellsPerRow;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * 提取文件中所有工作表的文本（单元格以制表符分隔，按单元格格式显示数值和日期，公式取缓存结果）
+     */
+    public void extract(File file, Writer out) throws IOException {
+        Output text = new Output(out);
+        boolean truncated = false;
+
+        // 只读打开，直接从 zip 条目按需读取，不把整个包读入内存
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new DataFormatter();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    if (text.written >= maxChars) {
+                        truncated = true;
+                        break;
+                    }
+                    text.append("=== 工作表: ").append(sheets.getSheetName()).append(" ===\n");
+
+                    SheetTextHandler handler = new SheetTextHandler(text);
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, handler, formatter, false));
+                    try {
+                        parser.parse(new InputSource(sheet));
+                    } catch (StopParsing stop) {
+                        // 行数或字符数达到上限，提前结束本工作表
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    text.append("\n");
+
+                    if (handler.rowsCapped || handler.charsExhausted) {
+                        truncated = true;
+                    }
+                    if (handler.charsExhausted) {
+                        break;
+                    }
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("XLSX 解析失败: " + e.getMessage(), e);
+        }
+
+        if (truncated) {
+            out.write(TRUNCATED_NOTE);
+        }
+    }
+
+    /**
+     * 输出及已写字符数；SAX 回调里不能抛受检异常，写入失败包装为 UncheckedIOException
+     */
+    private static final class Output {
+
+        private final Writer out;
+        private long written = 0;
+
+        Output(Writer out) {
+            this.out = out;
+        }
+
+        Output append(String s) {
+            try {
+                out.write(s);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            written += s.length();
+            return this;
+        }
+    }
+
+    /**
+     * 单个工作表的行回调：追加单元格文本，超过上限时抛出 StopParsing 中断 SAX 解析
+     */
+    private class SheetTextHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Output text;
+        private int rows = 0;
+        private int cellsInRow = 0;
+        private boolean rowsCapped = false;
+        private boolean charsExhausted = false;
+
+        SheetTextHandler(Output text) {
+            this.text = text;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            if (rows >= maxRowsPerSheet) {
+                rowsCapped = true;
+                throw StopParsing.INSTANCE;
+            }
+            rows++;
+            cellsInRow = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            text.append("\n");
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (cellsInRow >= maxCellsPerRow) {
+                return;
+            }
+            cellsInRow++;
+            String value = formattedValue == null ? " " : formattedValue;
+            long remaining = maxChars - text.written;
+            if (value.length() + 1 > remaining) {
+                text.append(value.substring(0, (int) Math.min(value.length(), remaining)));
+                charsExhausted = true;
+                throw StopParsing.INSTANCE;
+            }
+            text.append(value).append("\t");
+        }
+    }
+
+    /**
+     * 提前终止信号（回调接口不允许受检异常；不需要堆栈）
+     */
+    private static final class StopParsing extends RuntimeException {
+
+        static final StopParsing INSTANCE = new StopParsing();
+
+        private StopParsing() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+-- ai_conversations 会话查询索引（启动时由 spring.sql.init 执行，见 application-prod.yml）
+-- 会话列表（按 session_id 分组、取本页会话的标题和预览）和会话历史查询使用
+-- CONCURRENTLY 不锁表，需在事务外执行（spring.sql.init 使用自动提交连接）
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_ai_conversations_user_session_created
+    ON ai_conversations (user_id, session_id, created_at);
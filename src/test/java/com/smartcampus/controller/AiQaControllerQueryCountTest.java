@@ -0,0 +1,157 @@
+package com.smartcampus.controller;
+
+import com.smartcampus.entity.AiConversation;
+import com.smartcampus.entity.LearningFile;
+import com.smartcampus.repository.AiConversationRepository;
+import com.smartcampus.repository.LearningFileRepository;
+import com.smartcampus.utils.JwtUtil;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 会话列表、会话历史的查询次数回归测试：
+ * 关联文件按 ID 批量加载，查询次数不随会话数、对话轮数增长
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"prod", "test"})
+class AiQaControllerQueryCountTest {
+
+    private static final int SESSIONS = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private AiConversationRepository aiConversationRepository;
+
+    @Autowired
+    private LearningFileRepository learningFileRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private StringRedisTemplate redisTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        // Token 版本号按 0 处理
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        aiConversationRepository.deleteAll();
+        learningFileRepository.deleteAll();
+    }
+
+    @Test
+    void sessionListQueryCountDoesNotGrowWithSessions() throws Exception {
+        createSessions(1L, 1, 1);
+        createSessions(2L, SESSIONS, 2);
+
+        long single = countStatements(() -> getJson("/api/ai/chat/sessions", 1L)
+                .andExpect(jsonPath("$.data.length()").value(1)));
+        long many = countStatements(() -> getJson("/api/ai/chat/sessions", 2L)
+                .andExpect(jsonPath("$.data.length()").value(SESSIONS))
+                .andExpect(jsonPath("$.data[0].fileName").exists()));
+
+        assertThat(many).isEqualTo(single);
+    }
+
+    @Test
+    void sessionHistoryQueryCountDoesNotGrowWithTurns() throws Exception {
+        String shortSession = createSessions(1L, 1, 1).getFirst();
+        String longSession = createSessions(2L, 1, SESSIONS).getFirst();
+
+        long single = countStatements(() -> getJson("/api/ai/chat/history/" + shortSession, 1L)
+                .andExpect(jsonPath("$.data.length()").value(1)));
+        long many = countStatements(() -> getJson("/api/ai/chat/history/" + longSession, 2L)
+                .andExpect(jsonPath("$.data.length()").value(SESSIONS))
+                .andExpect(jsonPath("$.data[" + (SESSIONS - 1) + "].file.originalName").exists()));
+
+        assertThat(many).isEqualTo(single);
+    }
+
+    /**
+     * 为用户创建 sessions 个会话，每个会话 turns 轮对话，每轮关联一个不同的文件
+     */
+    private List<String> createSessions(Long userId, int sessions, int turns) {
+        List<String> sessionIds = new ArrayList<>();
+        LocalDateTime time = LocalDateTime.now().minusDays(1);
+        for (int s = 0; s < sessions; s++) {
+            String sessionId = "sess_" + userId + "_" + s;
+            sessionIds.add(sessionId);
+            for (int t = 0; t < turns; t++) {
+                LearningFile file = new LearningFile();
+                file.setUserId(userId);
+                file.setFileName(sessionId + "_" + t + ".txt");
+                file.setOriginalName("笔记" + t + ".txt");
+                file.setFilePath("/tmp/" + sessionId + "_" + t + ".txt");
+                file.setFileType("txt");
+                file.setFileSize(100L);
+                file.setUploadTime(time);
+                learningFileRepository.save(file);
+
+                AiConversation conversation = new AiConversation();
+                conversation.setUserId(userId);
+                conversation.setSessionId(sessionId);
+                conversation.setTitle("会话" + s);
+                conversation.setQuestion("问题" + t);
+                conversation.setAnswer("回答" + t);
+                conversation.setFileId(file.getId());
+                time = time.plusMinutes(1);
+                conversation.setCreatedAt(time);
+                aiConversationRepository.save(conversation);
+            }
+        }
+        return sessionIds;
+    }
+
+    private ResultActions getJson(String url, Long userId) throws Exception {
+        String token = jwtUtil.generateToken(userId, "user" + userId, "student");
+        return mockMvc.perform(get(url).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200));
+    }
+
+    private long countStatements(Request request) throws Exception {
+        statistics.clear();
+        request.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void run() throws Exception;
+    }
+}
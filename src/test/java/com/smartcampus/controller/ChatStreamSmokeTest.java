@@ -0,0 +1,117 @@
+package com.smartcampus.controller;
+
+import com.smartcampus.entity.AiConversation;
+import com.smartcampus.repository.AiConversationRepository;
+import com.smartcampus.utils.JwtUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.TestSocketUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 流式对话冒烟测试：真实端口启动，/api/ai/chat/send 经 QianWenService 请求本进程内的 DashScopeStubController
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ai.stub.first-token-latency-ms=0",
+        "ai.stub.tokens-per-second=1000",
+        "ai.stub.answer-tokens=20"
+})
+@ActiveProfiles({"prod", "stub", "test"})
+class ChatStreamSmokeTest {
+
+    private static final Long USER_ID = 1L;
+
+    /**
+     * 桩服务地址在启动时由 server.port 拼出，端口为 0 时无法回连，因此预先选一个空闲端口
+     */
+    @DynamicPropertySource
+    static void serverPort(DynamicPropertyRegistry registry) {
+        int port = TestSocketUtils.findAvailableTcpPort();
+        registry.add("server.port", () -> port);
+    }
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private AiConversationRepository aiConversationRepository;
+
+    @MockBean
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+
+        webTestClient = webTestClient.mutate().responseTimeout(Duration.ofSeconds(30)).build();
+        aiConversationRepository.deleteAll();
+    }
+
+    @Test
+    void streamsStubAnswerAndSavesConversation() {
+        String body = webTestClient.post().uri("/api/ai/chat/send")
+                .header("Authorization", "Bearer " + jwtUtil.generateToken(USER_ID, "student1", "student"))
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .body(BodyInserters.fromMultipartData(chatForm("smoke_session")))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(body).contains("\"content\"").contains("[DONE]").doesNotContain("event:error");
+
+        List<AiConversation> saved = aiConversationRepository
+                .findByUserIdAndSessionIdOrderByCreatedAtAsc(USER_ID, "smoke_session");
+        assertThat(saved).hasSize(1);
+        assertThat(saved.getFirst().getQuestion()).isEqualTo("如何复习高等数学？");
+        assertThat(saved.getFirst().getAnswer()).isNotBlank();
+    }
+
+    @Test
+    void rejectsInvalidTokenBeforeStreaming() {
+        webTestClient.post().uri("/api/ai/chat/send")
+                .header("Authorization", "Bearer invalid")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .body(BodyInserters.fromMultipartData(chatForm("smoke_session")))
+                .exchange()
+                .expectStatus().isUnauthorized()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.code").isEqualTo(401);
+    }
+
+    private static MultiValueMap<String, HttpEntity<?>> chatForm(String sessionId) {
+        MultipartBodyBuilder form = new MultipartBodyBuilder();
+        form.part("question", "如何复习高等数学？");
+        form.part("sessionId", sessionId);
+        form.part("stream", "true");
+        return form.build();
+    }
+}
@@ -0,0 +1,91 @@
+package com.smartcampus.repository;
+
+import com.smartcampus.entity.AiConversation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 会话摘要查询：分组结果、标题/预览取值与游标分页
+ */
+@SpringBootTest
+@ActiveProfiles({"prod", "test"})
+class AiConversationRepositoryTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 1, 1, 8, 0);
+
+    @Autowired
+    private AiConversationRepository aiConversationRepository;
+
+    @MockBean
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() {
+        aiConversationRepository.deleteAll();
+        // s0、s1 创建时间相同，按会话ID倒序排列
+        save(1L, "s0", "会话0", "问题0", BASE);
+        save(1L, "s1", "会话1", "问题1", BASE);
+        save(1L, "s2", null, "问题2-1", BASE.plusHours(2));
+        save(1L, "s2", "会话2", "问题2-2", BASE.plusHours(3));
+        save(1L, "s3", "会话3", "问题3", BASE.plusHours(4));
+        save(1L, "s4", "会话4", "问题4-1", BASE.plusHours(5));
+        save(1L, "s4", "会话4改", "问题4-2", BASE.plusHours(6));
+        save(2L, "other", "其他用户", "问题", BASE.plusHours(7));
+    }
+
+    @Test
+    void summarizesEachSession() {
+        List<Object[]> rows = aiConversationRepository.findSessionSummaries(1L);
+
+        assertThat(rows).extracting(row -> row[0]).containsExactly("s4", "s3", "s2", "s1", "s0");
+        Object[] s2 = rows.get(2);
+        assertThat(s2[1]).isEqualTo("会话2");       // 最早的非空标题
+        assertThat(s2[2]).isEqualTo("问题2-2");     // 最新问题
+        assertThat(((Number) s2[4]).intValue()).isEqualTo(2);
+        Object[] s4 = rows.getFirst();
+        assertThat(s4[1]).isEqualTo("会话4");
+        assertThat(s4[2]).isEqualTo("问题4-2");
+        assertThat(toLocalDateTime(s4[3])).isEqualTo(BASE.plusHours(5));
+    }
+
+    @Test
+    void pagesWithCursorInCreateTimeOrder() {
+        List<String> sessionIds = new ArrayList<>();
+        List<Object[]> page = aiConversationRepository.findSessionSummariesFirstPage(1L, 2);
+        while (!page.isEmpty()) {
+            page.forEach(row -> sessionIds.add((String) row[0]));
+            Object[] last = page.getLast();
+            page = aiConversationRepository.findSessionSummariesAfter(
+                    1L, toLocalDateTime(last[3]), (String) last[0], 2);
+        }
+
+        assertThat(sessionIds).containsExactly("s4", "s3", "s2", "s1", "s0");
+    }
+
+    private void save(Long userId, String sessionId, String title, String question, LocalDateTime createdAt) {
+        AiConversation conversation = new AiConversation();
+        conversation.setUserId(userId);
+        conversation.setSessionId(sessionId);
+        conversation.setTitle(title);
+        conversation.setQuestion(question);
+        conversation.setAnswer("回答");
+        conversation.setCreatedAt(createdAt);
+        aiConversationRepository.save(conversation);
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : (LocalDateTime) value;
+    }
+}
@@ -0,0 +1,95 @@
+package com.smartcampus.service;
+
+import com.smartcampus.exception.BusinessException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DashScopeGuardTest {
+
+    private DashScopeGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        guard = newGuard(2, 4);
+    }
+
+    private static DashScopeGuard newGuard(int initialLimit, int maxLimit) {
+        DashScopeGuard guard = new DashScopeGuard(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(guard, "initialLimit", initialLimit);
+        ReflectionTestUtils.setField(guard, "maxLimit", maxLimit);
+        ReflectionTestUtils.setField(guard, "minLimit", 1);
+        ReflectionTestUtils.setField(guard, "backoffRatio", 0.5);
+        ReflectionTestUtils.setField(guard, "latencyThresholdMs", 30000L);
+        ReflectionTestUtils.setField(guard, "windowSize", 20);
+        ReflectionTestUtils.setField(guard, "minimumCalls", 10);
+        ReflectionTestUtils.setField(guard, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(guard, "openSeconds", 30L);
+        ReflectionTestUtils.setField(guard, "halfOpenProbes", 3);
+        guard.init();
+        return guard;
+    }
+
+    @Test
+    void rejectsWhenInFlightReachesLimit() {
+        List<Sinks.One<String>> calls = startCalls(2);
+
+        assertThatThrownBy(() -> guard.protect(Mono.just("x")).block())
+                .isInstanceOf(BusinessException.class)
+                .satisfies(e -> assertThat(((BusinessException) e).getCode()).isEqualTo(503));
+
+        calls.forEach(call -> call.tryEmitValue("ok"));
+        assertThat(guard.currentInFlight()).isZero();
+    }
+
+    @Test
+    void growsAboveInitialLimitUpToMaxLimitWhenSaturated() {
+        for (int round = 0; round < 50; round++) {
+            startCalls(guard.currentLimit()).forEach(call -> call.tryEmitValue("ok"));
+        }
+
+        assertThat(guard.currentLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void doesNotGrowUnderLightLoad() {
+        guard = newGuard(4, 10);
+
+        for (int i = 0; i < 50; i++) {
+            guard.protect(Mono.just("ok")).block();
+        }
+
+        assertThat(guard.currentLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void shrinksOnUpstreamFailure() {
+        Sinks.One<String> call = startCalls(1).getFirst();
+        call.tryEmitError(new TimeoutException());
+
+        assertThat(guard.currentLimit()).isEqualTo(1);
+    }
+
+    /**
+     * 发起 count 个未完成的调用，返回用于结束调用的 sink
+     */
+    private List<Sinks.One<String>> startCalls(int count) {
+        List<Sinks.One<String>> calls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Sinks.One<String> sink = Sinks.one();
+            guard.protect(sink.asMono()).onErrorResume(e -> Mono.empty()).subscribe();
+            calls.add(sink);
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,124 @@
+package com.smartcampus.service.extract;
+
+import com.smartcampus.service.DownstreamLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfDocumentExtractorTest {
+
+    private static final int PAGES = 12;
+
+    @TempDir
+    Path tempDir;
+
+    private ExecutorService executor;
+    private File pdf;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        pdf = tempDir.resolve("pages.pdf").toFile();
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 1; i <= PAGES; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("page-" + i);
+                    content.endText();
+                }
+            }
+            document.save(pdf);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void extractsPagesInOrderAndReturnsBudget() throws Exception {
+        PdfDocumentExtractor extractor = newExtractor(256);
+
+        String text = extract(extractor);
+
+        assertPagesInOrder(text);
+        assertThat(availableBudgetAfterHelpers(extractor)).isEqualTo(256);
+    }
+
+    @Test
+    void extractsWithOneLoadWhenBudgetOnlyFitsOneDocument() throws Exception {
+        // 预算只够一份文档：辅助线程不启动，调用线程提取全部区间
+        PdfDocumentExtractor extractor = newExtractor(1);
+
+        String text = extract(extractor);
+
+        assertPagesInOrder(text);
+        assertThat(availableBudgetAfterHelpers(extractor)).isEqualTo(1);
+    }
+
+    private PdfDocumentExtractor newExtractor(int memoryBudgetMb) {
+        DownstreamLimiter limiter = new DownstreamLimiter(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(limiter, "embeddingMaxConcurrent", 1);
+        ReflectionTestUtils.setField(limiter, "extractionMaxConcurrent", 4);
+        ReflectionTestUtils.setField(limiter, "acquireTimeoutMs", 10_000L);
+        limiter.init();
+
+        PdfDocumentExtractor extractor = new PdfDocumentExtractor(executor, limiter);
+        ReflectionTestUtils.setField(extractor, "pagesPerRange", 2);
+        ReflectionTestUtils.setField(extractor, "maxParallelRanges", 4);
+        ReflectionTestUtils.setField(extractor, "memoryBudgetMb", memoryBudgetMb);
+        ReflectionTestUtils.setField(extractor, "workerMemoryMb", 1);
+        ReflectionTestUtils.setField(extractor, "timeoutSeconds", 30L);
+        extractor.init();
+        return extractor;
+    }
+
+    private String extract(PdfDocumentExtractor extractor) throws Exception {
+        StringWriter out = new StringWriter();
+        try (DocumentSource source = DocumentSource.of(pdf)) {
+            extractor.extract(source, out);
+        }
+        return out.toString();
+    }
+
+    private static void assertPagesInOrder(String text) {
+        int position = -1;
+        for (int i = 1; i <= PAGES; i++) {
+            int next = text.indexOf("page-" + i + System.lineSeparator());
+            assertThat(next).as("page-%d", i).isGreaterThan(position);
+            position = next;
+        }
+    }
+
+    /**
+     * 辅助线程在最后一个区间完成后才关闭文档、归还预算，等它们退出后再读
+     */
+    private int availableBudgetAfterHelpers(PdfDocumentExtractor extractor) throws InterruptedException {
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        Semaphore budget = (Semaphore) ReflectionTestUtils.getField(extractor, "memoryBudget");
+        return budget.availablePermits();
+    }
+}
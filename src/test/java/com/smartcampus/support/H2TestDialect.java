@@ -0,0 +1,30 @@
+package com.smartcampus.support;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.internal.StandardTableExporter;
+import org.hibernate.tool.schema.spi.Exporter;
+
+import java.util.Arrays;
+
+/**
+ * 测试库方言：建表时把 PostgreSQL 数组列定义（如 text[]）改写为 H2 写法（text array）
+ */
+public class H2TestDialect extends H2Dialect {
+
+    private final StandardTableExporter tableExporter = new StandardTableExporter(this) {
+        @Override
+        public String[] getSqlCreateStrings(Table table, Metadata metadata, SqlStringGenerationContext context) {
+            return Arrays.stream(super.getSqlCreateStrings(table, metadata, context))
+                    .map(sql -> sql.replaceAll("(\\w+)\\[\\]", "$1 array"))
+                    .toArray(String[]::new);
+        }
+    };
+
+    @Override
+    public Exporter<Table> getTableExporter() {
+        return tableExporter;
+    }
+}